@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResult;
+
+import java.util.ArrayList;
+
+//
+// Canned API responses and inputs for the benchmarks, shaped like what the Rigor API returns
+//
+
+public class BenchData {
+    public static String SnapshotJson(int testID, int snapshotID, String status) {
+        return "{\"test_id\":" + testID + ",\"snapshot_id\":" + snapshotID + ",\"status\":\"" + status + "\","
+                + "\"snapshot_url_guest\":\"https://my.rigor.com/snapshots/" + snapshotID + "?guest=abc\","
+                + "\"zoompf_score\":71,\"defect_count_critical_1pc\":3,"
+                + "\"defect_count_total\":42,\"date_started\":\"2017-01-01T00:00:00Z\"}";
+    }
+
+    // A defect listing with count defects, every tenth one critical
+    public static String DefectListJson(int count) {
+        return DefectListJson(0,count);
+    }
+
+    // One page of a listing, holding defects first..first+count-1
+    public static String DefectListJson(int first, int count) {
+        StringBuilder json=new StringBuilder("{\"defects\":[");
+        for(int i=first;i<first+count;++i) {
+            if(i>first) {
+                json.append(',');
+            }
+            json.append("{\"defect_id\":").append(100+i)
+                    .append(",\"severity\":\"").append(Severity(i)).append('"')
+                    .append(",\"name\":\"Defect number ").append(i).append('"')
+                    .append(",\"defect_url_guest\":\"https://my.rigor.com/defects/").append(100+i).append("?guest=abc\"")
+                    .append(",\"instance_count\":").append(i%7)
+                    .append('}');
+        }
+        json.append("],\"paging\":{\"per_page\":").append(count).append("}}");
+        return json.toString();
+    }
+
+    // The same defects as objects
+    public static ArrayList<RigorApiDefectResult> Defects(int count) {
+        ArrayList<RigorApiDefectResult> defects=new ArrayList<RigorApiDefectResult>();
+        for(int i=0;i<count;++i) {
+            RigorApiDefectResult defect=new RigorApiDefectResult();
+            defect.defect_id=100+i;
+            defect.severity=Severity(i);
+            defect.name="Defect number " + i;
+            defect.defect_url_guest="https://my.rigor.com/defects/" + (100+i) + "?guest=abc";
+            defects.add(defect);
+        }
+        return defects;
+    }
+
+    // A CSV list of count IDs, with spaces as people type them
+    public static String IDList(int count) {
+        StringBuilder csv=new StringBuilder();
+        for(int i=0;i<count;++i) {
+            if(i>0) {
+                csv.append(", ");
+            }
+            csv.append(1000+i*7);
+        }
+        return csv.toString();
+    }
+
+    protected static String Severity(int i) {
+        return i%10==0 ? "Critical" : "Medium";
+    }
+}
@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import com.google.gson.Gson;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiCodec;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResultList;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotUpdate;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+//
+// Decoding and encoding API objects: a new reflective Gson per call (how requests used to do
+// it), one shared reflective Gson, and the shared RigorApiCodec. Run with -prof gc (the default
+// in the benchmark profile) to see allocation per operation alongside the time.
+//
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CodecBenchmark {
+    // Defects in the decoded listing
+    @Param({"10", "100"})
+    public int defectCount;
+
+    private String defectListJson;
+    private String snapshotJson;
+    private RigorApiSnapshotUpdate update;
+    private Gson sharedGson;
+
+    @Setup
+    public void setup() {
+        this.defectListJson=BenchData.DefectListJson(this.defectCount);
+        this.snapshotJson=BenchData.SnapshotJson(1234,5678,"Complete");
+
+        this.update=new RigorApiSnapshotUpdate();
+        for(int i=0;i<5;++i) {
+            this.update.snapshot_ids.add(1000+i);
+        }
+        RigorApiTag tag=new RigorApiTag();
+        tag.name="Jenkins benchmark #42";
+        tag.priority="Low";
+        this.update.tags.add(tag);
+
+        this.sharedGson=new Gson();
+    }
+
+    @Benchmark
+    public RigorApiDefectResultList decodeDefectsNewGson() {
+        return new Gson().fromJson(new StringReader(this.defectListJson),RigorApiDefectResultList.class);
+    }
+
+    @Benchmark
+    public RigorApiDefectResultList decodeDefectsSharedGson() {
+        return this.sharedGson.fromJson(new StringReader(this.defectListJson),RigorApiDefectResultList.class);
+    }
+
+    @Benchmark
+    public RigorApiDefectResultList decodeDefectsCodec() {
+        return RigorApiCodec.FromJson(new StringReader(this.defectListJson),RigorApiDefectResultList.class);
+    }
+
+    @Benchmark
+    public RigorApiSnapshotResult decodeSnapshotNewGson() {
+        return new Gson().fromJson(new StringReader(this.snapshotJson),RigorApiSnapshotResult.class);
+    }
+
+    @Benchmark
+    public RigorApiSnapshotResult decodeSnapshotCodec() {
+        return RigorApiCodec.FromJson(new StringReader(this.snapshotJson),RigorApiSnapshotResult.class);
+    }
+
+    @Benchmark
+    public String encodeUpdateNewGson() {
+        return new Gson().toJson(this.update);
+    }
+
+    @Benchmark
+    public String encodeUpdateCodec() {
+        return RigorApiCodec.ToJson(this.update);
+    }
+}
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorDefectSummary;
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//
+// Checking a snapshot's defects against the configured rules: building the defect summary from
+// a listing, then the critical count and found-defect checks made against it
+//
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class DefectEvaluationBenchmark {
+    // Defects found in the snapshot
+    @Param({"100", "5000"})
+    public int defectCount;
+
+    private ArrayList<RigorApiDefectResult> defects;
+    private List<Integer> foundDefectIDs;
+    private RigorDefectSummary summary;
+
+    @Setup
+    public void setup() {
+        this.defects=BenchData.Defects(this.defectCount);
+
+        // The performance budget defects, plus a few that are present
+        BuilderSettings settings=new BuilderSettings();
+        this.foundDefectIDs=new ArrayList<Integer>(settings.PerformanceBudgetDefectIds);
+        for(int i=0;i<10;++i) {
+            this.foundDefectIDs.add(100+i*3);
+        }
+
+        this.summary=summarize();
+    }
+
+    @Benchmark
+    public RigorDefectSummary buildSummary() {
+        return summarize();
+    }
+
+    @Benchmark
+    public void evaluateRules(Blackhole bh) {
+        bh.consume(this.summary.CountBySeverity(RigorDefectSummary.CriticalSeverity));
+        bh.consume(this.summary.CriticalDefects());
+        bh.consume(this.summary.Matching(this.foundDefectIDs));
+    }
+
+    protected RigorDefectSummary summarize() {
+        RigorDefectSummary summary=new RigorDefectSummary(this.foundDefectIDs);
+        for(RigorApiDefectResult defect: this.defects) {
+            summary.Add(defect);
+        }
+        return summary;
+    }
+}
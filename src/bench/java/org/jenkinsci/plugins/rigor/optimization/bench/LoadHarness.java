@@ -0,0 +1,220 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiClient;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHelper;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHttpTransport;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorRateLimiter;
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//
+// Runs many builds' worth of Rigor tests at once against StubApiServer and reports what it cost
+// the controller: threads, heap, API requests and how long each build step took end to end.
+//
+// Each simulated build runs RigorApiHelper.RunBuildTests, which is the whole of what the build
+// step does once its settings are parsed and the API key looked up.
+//
+//   mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=org.jenkinsci.plugins.rigor.optimization.bench.LoadHarness \
+//       -Dexec.args="builds=50 testsPerBuild=3 scanSeconds=10 latencyMS=50"
+//
+// Options (name=value):
+//   builds           simultaneous builds (20)
+//   testsPerBuild    performance tests each build runs (3)
+//   tests            tests known to the stub API (50)
+//   defects          defects found per snapshot (200)
+//   scanSeconds      how long each snapshot scans (5)
+//   latencyMS        added to every API response (20)
+//   errorRate        fraction of API requests failing with a 500 (0)
+//   throttle         API requests per second before 429s, 0 for none (0)
+//   clientRate       plugin's own API rate limit per key, 0 for none (plugin default)
+//   consolidated     fetch each snapshot's defects once (false)
+//   verbose          print every build's log (false)
+//
+
+public class LoadHarness {
+    public static void main(String[] args) throws Exception {
+        Map<String,String> opts=parseArgs(args);
+        final int builds=intOpt(opts,"builds",20);
+        final int testsPerBuild=intOpt(opts,"testsPerBuild",3);
+        final boolean consolidated=Boolean.parseBoolean(stringOpt(opts,"consolidated","false"));
+        final boolean verbose=Boolean.parseBoolean(stringOpt(opts,"verbose","false"));
+
+        StubApiServer.Options stubOptions=new StubApiServer.Options();
+        stubOptions.TestCount=intOpt(opts,"tests",50);
+        stubOptions.DefectsPerSnapshot=intOpt(opts,"defects",200);
+        stubOptions.ScanDurationMS=intOpt(opts,"scanSeconds",5)*1000L;
+        stubOptions.LatencyMS=intOpt(opts,"latencyMS",20);
+        stubOptions.ErrorRate=Double.parseDouble(stringOpt(opts,"errorRate","0"));
+        stubOptions.ThrottleRequestsPerSecond=intOpt(opts,"throttle",0);
+        final int testCount=stubOptions.TestCount;
+
+        StubApiServer server=new StubApiServer(stubOptions);
+        RigorApiClient.SetApiEndpoint(server.getEndpoint());
+        RigorRateLimiter.Get().Configure(intOpt(opts,"clientRate",RigorRateLimiter.DefaultRequestsPerSecond),
+                RigorRateLimiter.DefaultBurstSize);
+
+        // Watch the controller while the builds run
+        final ThreadMXBean threads=ManagementFactory.getThreadMXBean();
+        final MemoryMXBean memory=ManagementFactory.getMemoryMXBean();
+        final int threadsBefore=threads.getThreadCount();
+        final long heapBefore=memory.getHeapMemoryUsage().getUsed();
+        final long[] peaks=new long[] { threadsBefore, heapBefore };
+        ScheduledExecutorService sampler=Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (peaks) {
+                    peaks[0]=Math.max(peaks[0],threads.getThreadCount());
+                    peaks[1]=Math.max(peaks[1],memory.getHeapMemoryUsage().getUsed());
+                }
+            }
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        System.out.println("Running " + builds + " builds of " + testsPerBuild + " tests against " + server.getEndpoint());
+
+        // Start every build at once
+        final CountDownLatch start=new CountDownLatch(1);
+        final CountDownLatch finished=new CountDownLatch(builds);
+        final long[] latencies=new long[builds];
+        final AtomicInteger passed=new AtomicInteger();
+        for(int b=0;b<builds;++b) {
+            final int buildNumber=b+1;
+            Thread thread=new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BuilderSettings settings=buildSettings(buildNumber,testsPerBuild,testCount,consolidated);
+                        PrintStream log=verbose ? System.out : new PrintStream(new DiscardOutputStream());
+                        start.await();
+
+                        long began=System.nanoTime();
+                        RigorApiHelper helper=new RigorApiHelper("load-test-api-key",settings,log,buildNumber,"load-test");
+                        if(helper.RunBuildTests()) {
+                            passed.incrementAndGet();
+                        }
+                        latencies[buildNumber-1]=TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-began);
+                    }
+                    catch (Exception e) {
+                        System.out.println("Build " + buildNumber + " threw: " + e);
+                    }
+                    finally {
+                        finished.countDown();
+                    }
+                }
+            }, "load-test-build-" + buildNumber);
+            thread.start();
+        }
+
+        long began=System.nanoTime();
+        start.countDown();
+        finished.await();
+        long wallMS=TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-began);
+        sampler.shutdownNow();
+
+        //
+        // Report
+        //
+        List<Long> sorted=new ArrayList<Long>();
+        for(long latency: latencies) {
+            sorted.add(latency);
+        }
+        Collections.sort(sorted);
+
+        System.out.println();
+        System.out.println("Builds:            " + builds + " (" + passed.get() + " passed, " + (builds-passed.get()) + " failed) in " + wallMS + " ms");
+        System.out.println("Build latency ms:  min " + sorted.get(0) + ", p50 " + percentile(sorted,50) + ", p90 " + percentile(sorted,90)
+                + ", p99 " + percentile(sorted,99) + ", max " + sorted.get(sorted.size()-1));
+        synchronized (peaks) {
+            System.out.println("Controller threads: before " + threadsBefore + ", peak " + peaks[0] + ", after " + threads.getThreadCount());
+            System.out.println("Heap used MB:      before " + mb(heapBefore) + ", peak " + mb(peaks[1]) + ", after " + mb(memory.getHeapMemoryUsage().getUsed()));
+        }
+        System.out.println("API requests:      " + server.getRequests() + " (" + server.getInjectedErrors() + " injected errors, "
+                + server.getThrottled() + " throttled), " + RigorApiClient.getCoalescedGetCount() + " GETs coalesced by the client");
+        for(Map.Entry<String,Long> entry: server.getRequestsByRoute().entrySet()) {
+            System.out.println("    " + entry.getKey() + ": " + entry.getValue());
+        }
+        System.out.println("Connection pool:   " + RigorApiHttpTransport.Get().getPoolStats());
+
+        server.Stop();
+        System.exit(0);
+    }
+
+    // Settings as a build configured to fail on critical defects would have them
+    protected static BuilderSettings buildSettings(int buildNumber, int testsPerBuild, int testCount, boolean consolidated) {
+        StringBuilder testIDs=new StringBuilder();
+        for(int i=0;i<testsPerBuild;++i) {
+            if(i>0) {
+                testIDs.append(',');
+            }
+            testIDs.append(1 + ((buildNumber-1)*testsPerBuild+i)%testCount);
+        }
+
+        BuilderSettings settings=new BuilderSettings();
+        settings.InputPerformanceTestIds=testIDs.toString();
+        settings.InputFailOnResults=true;
+        settings.InputPerformanceScore="";
+        settings.InputCriticalNumber="1000";
+        settings.InputFoundDefectIds="9001, 9002";
+        settings.EnforcePerformanceBudgets=false;
+        settings.InputTestTimeoutSeconds="600";
+        settings.ParseSettings(null);
+        settings.ConsolidatedDefectFetch=consolidated;
+        return settings;
+    }
+
+    protected static long percentile(List<Long> sorted, int pct) {
+        int index=(int)Math.ceil(pct/100.0*sorted.size())-1;
+        return sorted.get(Math.max(0,Math.min(sorted.size()-1,index)));
+    }
+
+    protected static long mb(long bytes) {
+        return bytes/(1024*1024);
+    }
+
+    protected static Map<String,String> parseArgs(String[] args) {
+        Map<String,String> opts=new HashMap<String,String>();
+        for(String arg: args) {
+            int eq=arg.indexOf('=');
+            if(eq<=0) {
+                throw new IllegalArgumentException("Options are name=value, got: " + arg);
+            }
+            opts.put(arg.substring(0,eq),arg.substring(eq+1));
+        }
+        return opts;
+    }
+
+    protected static String stringOpt(Map<String,String> opts, String name, String defaultValue) {
+        String value=opts.get(name);
+        return value==null ? defaultValue : value;
+    }
+
+    protected static int intOpt(Map<String,String> opts, String name, int defaultValue) {
+        return Integer.parseInt(stringOpt(opts,name,Integer.toString(defaultValue)));
+    }
+
+    protected static class DiscardOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
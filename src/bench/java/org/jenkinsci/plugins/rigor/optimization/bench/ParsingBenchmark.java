@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+//
+// Parsing the build step's configuration: the CSV ID lists, and the whole of ParseSettings as
+// run at the start of every build
+//
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ParsingBenchmark {
+    // IDs in each CSV list
+    @Param({"3", "50"})
+    public int idCount;
+
+    private String ids;
+    private BuilderSettings settings;
+
+    @Setup
+    public void setup() {
+        this.ids=BenchData.IDList(this.idCount);
+
+        this.settings=new BuilderSettings();
+        this.settings.InputPerformanceTestIds=this.ids;
+        this.settings.InputFailOnResults=true;
+        this.settings.InputPerformanceScore="75";
+        this.settings.InputCriticalNumber="3";
+        this.settings.InputFoundDefectIds=this.ids;
+        this.settings.EnforcePerformanceBudgets=true;
+        this.settings.InputTestTimeoutSeconds="600";
+    }
+
+    @Benchmark
+    public ArrayList<Integer> splitCSV() throws Exception {
+        return Utils.SplitCSV(this.ids);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> parseCSVIntegerList() throws Exception {
+        return Utils.ParseCSVIntegerList(this.ids,true);
+    }
+
+    @Benchmark
+    public boolean parseSettings() {
+        return this.settings.ParseSettings(null);
+    }
+}
@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiClient;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorDefectPager;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//
+// The client's whole request path against StubApiServer: rate limiter, circuit breaker,
+// connection pool, HTTP, decoding and future callbacks.
+//
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class RequestPathBenchmark {
+    // Defects in the listing read by readDefects
+    @Param({"1000"})
+    public int defectCount;
+
+    // Completed snapshots to poll
+    private static final int SnapshotCount=100;
+
+    private StubApiServer server;
+    private RigorApiClient client;
+    private int[] snapshotIDs;
+
+    @Setup
+    public void setup() throws Exception {
+        StubApiServer.Options options=new StubApiServer.Options();
+        options.DefectsPerSnapshot=this.defectCount;
+        options.ScanDurationMS=0;
+        this.server=new StubApiServer(options);
+        RigorApiClient.SetApiEndpoint(this.server.getEndpoint());
+
+        // Measure the client, not the default API rate limit
+        RigorRateLimiter.Get().Configure(0,1);
+
+        this.client=new RigorApiClient("benchmark-api-key");
+        this.snapshotIDs=new int[SnapshotCount];
+        for(int i=0;i<SnapshotCount;++i) {
+            this.snapshotIDs[i]=this.client.StartSnapshot(1,null).snapshot_id;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.Stop();
+        RigorApiClient.SetApiEndpoint(null);
+    }
+
+    // One blocking request, start to finish
+    @Benchmark
+    public RigorApiSnapshotResult getSnapshot() throws Exception {
+        return this.client.GetSnapshot(1,this.snapshotIDs[0]);
+    }
+
+    // Concurrent builds polling different snapshots
+    @Benchmark
+    @Threads(8)
+    public RigorApiSnapshotResult getSnapshotContended() throws Exception {
+        return this.client.GetSnapshot(1,this.snapshotIDs[ThreadLocalRandom.current().nextInt(SnapshotCount)]);
+    }
+
+    // Stream a whole multi-page defect listing
+    @Benchmark
+    public int readDefects() throws Exception {
+        RigorDefectPager pager=new RigorDefectPager(this.client,1,this.snapshotIDs[0],null);
+        int count=0;
+        try {
+            for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) {
+                ++count;
+            }
+        }
+        finally {
+            pager.Close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,511 @@
+package org.jenkinsci.plugins.rigor.optimization.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiCodec;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiDefectResultList;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiError;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotCreate;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResultList;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotUpdate;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiTag;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiTestResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiTestResultList;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiTestUpdate;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//
+// In-process stand-in for the Rigor Optimization v2 API, for benchmarks and load tests. Keeps
+// tests, snapshots and their tags in memory and answers the calls RigorApiClient makes:
+//
+//   GET    tests                                    paged test list
+//   GET    tests/{test}                             test details
+//   PUT    tests/{test}                             add tags to a test
+//   POST   tests/{test}/snapshots                   start a snapshot
+//   GET    tests/{test}/snapshots                   snapshots, filtered by f.snapshot_ids
+//   PUT    tests/{test}/snapshots                   add tags to snapshots
+//   GET    tests/{test}/snapshots/{snapshot}        snapshot status
+//   GET    tests/{test}/snapshots/{snapshot}/defects  defects, filtered by f.severity or
+//                                                   f.defect_ids and paged by p.page/p.per_page
+//
+// Snapshots scan for Options.ScanDurationMS, then complete with a fixed set of defects. Latency,
+// injected server errors and throttling (429 with Retry-After) are set through Options.
+//
+
+public class StubApiServer {
+    public static class Options {
+        // Tests 1..TestCount exist
+        public int TestCount=50;
+
+        // Defects found by every snapshot, every CriticalEvery'th one critical
+        public int DefectsPerSnapshot=200;
+        public int CriticalEvery=10;
+
+        // How long a snapshot scans before completing
+        public long ScanDurationMS=5000;
+
+        // Added to every response
+        public long LatencyMS=0;
+
+        // Fraction of requests (0..1) answered with a 500
+        public double ErrorRate=0;
+
+        // Requests per second answered before the rest get a 429, 0 for no limit
+        public int ThrottleRequestsPerSecond=0;
+    }
+
+    public StubApiServer(Options options) throws IOException {
+        this.options=options;
+        for(int id=1;id<=options.TestCount;++id) {
+            this.testTags.put(id,new ArrayList<RigorApiTag>());
+        }
+
+        this.server=HttpServer.create(new InetSocketAddress("127.0.0.1",0),0);
+        this.executor=Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/v2/",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                }
+                catch (Exception e) {
+                    respond(exchange,500,error("ServerError",e.toString()));
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    // Base URL to give the client, e.g. http://127.0.0.1:12345/v2/
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/v2/";
+    }
+
+    public void Stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    //
+    // Counters
+    //
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return this.injectedErrors.get();
+    }
+
+    public long getThrottled() {
+        return this.throttled.get();
+    }
+
+    public int getSnapshotsStarted() {
+        return this.snapshots.size();
+    }
+
+    // Requests per route, e.g. "GET tests/{test}/snapshots/{snapshot}"
+    public Map<String,Long> getRequestsByRoute() {
+        TreeMap<String,Long> counts=new TreeMap<String,Long>();
+        for(Map.Entry<String,AtomicLong> entry: this.routeCounts.entrySet()) {
+            counts.put(entry.getKey(),entry.getValue().get());
+        }
+        return counts;
+    }
+
+    //
+    // Request handling
+    //
+
+    protected void serve(HttpExchange exchange) throws Exception {
+        this.requests.incrementAndGet();
+        if(this.options.LatencyMS>0) {
+            Thread.sleep(this.options.LatencyMS);
+        }
+
+        if(throttle()) {
+            this.throttled.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After","1");
+            respond(exchange,429,error("TooManyRequests","Rate limit exceeded"));
+            return;
+        }
+        if(this.options.ErrorRate>0 && nextRandom()<this.options.ErrorRate) {
+            this.injectedErrors.incrementAndGet();
+            respond(exchange,500,error("ServerError","Injected failure"));
+            return;
+        }
+
+        String method=exchange.getRequestMethod();
+        URI uri=exchange.getRequestURI();
+        String path=uri.getPath().substring("/v2/".length());
+        String query=uri.getRawQuery();
+
+        Matcher m;
+        if(path.equals("tests")) {
+            count(method + " tests");
+            if(method.equals("GET")) {
+                respond(exchange,200,RigorApiCodec.ToJson(listTests(queryInt(query,"p.page",1),queryInt(query,"p.per_page",25))));
+                return;
+            }
+        }
+        else if((m=TEST.matcher(path)).matches()) {
+            count(method + " tests/{test}");
+            Integer testID=Integer.parseInt(m.group(1));
+            if(!this.testTags.containsKey(testID)) {
+                respond(exchange,404,error("NotFound","Test not found"));
+                return;
+            }
+            if(method.equals("GET")) {
+                respond(exchange,200,RigorApiCodec.ToJson(test(testID)));
+                return;
+            }
+            if(method.equals("PUT")) {
+                RigorApiTestUpdate update=readBody(exchange,RigorApiTestUpdate.class);
+                addTags(this.testTags.get(testID),update==null ? null : update.tags);
+                respond(exchange,200,RigorApiCodec.ToJson(test(testID)));
+                return;
+            }
+        }
+        else if((m=SNAPSHOTS.matcher(path)).matches()) {
+            count(method + " tests/{test}/snapshots");
+            Integer testID=Integer.parseInt(m.group(1));
+            if(!this.testTags.containsKey(testID)) {
+                respond(exchange,404,error("NotFound","Test not found"));
+                return;
+            }
+            if(method.equals("POST")) {
+                RigorApiSnapshotCreate create=readBody(exchange,RigorApiSnapshotCreate.class);
+                Snapshot snapshot=new Snapshot(testID,this.nextSnapshotID.incrementAndGet());
+                addTags(snapshot.tags,create==null ? null : create.tags);
+                this.snapshots.put(snapshot.id,snapshot);
+                respond(exchange,200,RigorApiCodec.ToJson(snapshot.toResult()));
+                return;
+            }
+            if(method.equals("GET")) {
+                respond(exchange,200,RigorApiCodec.ToJson(listSnapshots(testID,queryString(query,"f.snapshot_ids"))));
+                return;
+            }
+            if(method.equals("PUT")) {
+                RigorApiSnapshotUpdate update=readBody(exchange,RigorApiSnapshotUpdate.class);
+                if(update!=null && update.snapshot_ids!=null) {
+                    for(Integer id: update.snapshot_ids) {
+                        Snapshot snapshot=this.snapshots.get(id);
+                        if(snapshot!=null) {
+                            addTags(snapshot.tags,update.tags);
+                        }
+                    }
+                }
+                respond(exchange,200,"{}");
+                return;
+            }
+        }
+        else if((m=SNAPSHOT.matcher(path)).matches()) {
+            count(method + " tests/{test}/snapshots/{snapshot}");
+            Snapshot snapshot=findSnapshot(m.group(1),m.group(2));
+            if(snapshot==null) {
+                respond(exchange,404,error("NotFound","Snapshot not found"));
+                return;
+            }
+            if(method.equals("GET")) {
+                respond(exchange,200,RigorApiCodec.ToJson(snapshot.toResult()));
+                return;
+            }
+        }
+        else if((m=DEFECTS.matcher(path)).matches()) {
+            count(method + " tests/{test}/snapshots/{snapshot}/defects");
+            Snapshot snapshot=findSnapshot(m.group(1),m.group(2));
+            if(snapshot==null) {
+                respond(exchange,404,error("NotFound","Snapshot not found"));
+                return;
+            }
+            if(method.equals("GET")) {
+                respond(exchange,200,RigorApiCodec.ToJson(listDefects(queryString(query,"f.severity"),queryString(query,"f.defect_ids"),
+                        queryInt(query,"p.page",1),queryInt(query,"p.per_page",25))));
+                return;
+            }
+        }
+        else {
+            count("other");
+            respond(exchange,404,error("NotFound","No such resource"));
+            return;
+        }
+        respond(exchange,405,error("MethodNotAllowed",method + " not supported"));
+    }
+
+    protected RigorApiTestResultList listTests(int page, int perPage) {
+        RigorApiTestResultList list=new RigorApiTestResultList();
+        list.tests=new ArrayList<RigorApiTestResult>();
+        for(int id=(page-1)*perPage+1;id<=Math.min(this.options.TestCount,page*perPage);++id) {
+            list.tests.add(test(id));
+        }
+        return list;
+    }
+
+    protected RigorApiTestResult test(Integer testID) {
+        RigorApiTestResult test=new RigorApiTestResult();
+        test.test_id=testID;
+        test.name="Stub test " + testID;
+        test.url="https://www.example.com/page" + testID;
+        List<RigorApiTag> tags=this.testTags.get(testID);
+        synchronized (tags) {
+            test.tags=new ArrayList<RigorApiTag>(tags);
+        }
+        return test;
+    }
+
+    protected RigorApiSnapshotResultList listSnapshots(Integer testID, String snapshotIDs) {
+        RigorApiSnapshotResultList list=new RigorApiSnapshotResultList();
+        list.snapshots=new ArrayList<RigorApiSnapshotResult>();
+        if(snapshotIDs==null) {
+            return list;
+        }
+        for(String id: snapshotIDs.split(",")) {
+            Snapshot snapshot=findSnapshot(testID.toString(),id.trim());
+            if(snapshot!=null) {
+                list.snapshots.add(snapshot.toResult());
+            }
+        }
+        return list;
+    }
+
+    // Every snapshot finds the same defects: IDs 100 upwards
+    protected RigorApiDefectResultList listDefects(String severity, String defectIDs, int page, int perPage) {
+        Set<Integer> wanted=null;
+        if(defectIDs!=null) {
+            wanted=new HashSet<Integer>();
+            for(String id: defectIDs.split(",")) {
+                wanted.add(Integer.parseInt(id.trim()));
+            }
+        }
+
+        RigorApiDefectResultList list=new RigorApiDefectResultList();
+        list.defects=new ArrayList<RigorApiDefectResult>();
+        int skip=(page-1)*perPage;
+        for(int i=0;i<this.options.DefectsPerSnapshot && list.defects.size()<perPage;++i) {
+            RigorApiDefectResult defect=defect(i);
+            if(severity!=null && !severity.equalsIgnoreCase(defect.severity)) {
+                continue;
+            }
+            if(wanted!=null && !wanted.contains(defect.defect_id)) {
+                continue;
+            }
+            if(skip>0) {
+                --skip;
+                continue;
+            }
+            list.defects.add(defect);
+        }
+        return list;
+    }
+
+    protected RigorApiDefectResult defect(int i) {
+        RigorApiDefectResult defect=new RigorApiDefectResult();
+        defect.defect_id=100+i;
+        defect.severity=isCritical(i) ? "Critical" : "Medium";
+        defect.name="Stub defect " + i;
+        defect.defect_url_guest="https://optimization.example.com/defects/" + (100+i);
+        return defect;
+    }
+
+    protected boolean isCritical(int i) {
+        return this.options.CriticalEvery>0 && i%this.options.CriticalEvery==0;
+    }
+
+    protected Snapshot findSnapshot(String testID, String snapshotID) {
+        try {
+            Snapshot snapshot=this.snapshots.get(Integer.parseInt(snapshotID));
+            return (snapshot!=null && snapshot.testID==Integer.parseInt(testID)) ? snapshot : null;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected static void addTags(List<RigorApiTag> tags, List<RigorApiTag> added) {
+        if(added==null) {
+            return;
+        }
+        synchronized (tags) {
+            for(RigorApiTag tag: added) {
+                boolean present=false;
+                for(RigorApiTag existing: tags) {
+                    present|=existing.name!=null && existing.name.equals(tag.name);
+                }
+                if(!present) {
+                    tags.add(tag);
+                }
+            }
+        }
+    }
+
+    // Has this second's allowance of requests been used up?
+    protected synchronized boolean throttle() {
+        if(this.options.ThrottleRequestsPerSecond<=0) {
+            return false;
+        }
+        long second=System.currentTimeMillis()/1000;
+        if(second!=this.throttleSecond) {
+            this.throttleSecond=second;
+            this.throttleCount=0;
+        }
+        return ++this.throttleCount>this.options.ThrottleRequestsPerSecond;
+    }
+
+    protected synchronized double nextRandom() {
+        return this.random.nextDouble();
+    }
+
+    protected void count(String route) {
+        AtomicLong counter=this.routeCounts.get(route);
+        if(counter==null) {
+            this.routeCounts.putIfAbsent(route,new AtomicLong());
+            counter=this.routeCounts.get(route);
+        }
+        counter.incrementAndGet();
+    }
+
+    protected class Snapshot {
+        Snapshot(int testID, int id) {
+            this.testID=testID;
+            this.id=id;
+        }
+
+        RigorApiSnapshotResult toResult() {
+            RigorApiSnapshotResult result=new RigorApiSnapshotResult();
+            result.test_id=this.testID;
+            result.snapshot_id=this.id;
+            result.snapshot_url_guest="https://optimization.example.com/snapshots/" + this.id;
+            if(System.currentTimeMillis()-this.started<options.ScanDurationMS) {
+                result.status="ScanRunning";
+            }
+            else {
+                result.status="Complete";
+                result.zoompf_score=60 + this.id%40;
+                int critical=0;
+                for(int i=0;i<options.DefectsPerSnapshot;++i) {
+                    critical+=isCritical(i) ? 1 : 0;
+                }
+                result.defect_count_critical_1pc=critical;
+            }
+            return result;
+        }
+
+        final int testID;
+        final int id;
+        final long started=System.currentTimeMillis();
+        final List<RigorApiTag> tags=new ArrayList<RigorApiTag>();
+    }
+
+    //
+    // HTTP helpers
+    //
+
+    protected static <T> T readBody(HttpExchange exchange, Class<T> bodyClass) throws IOException {
+        Reader reader=new InputStreamReader(exchange.getRequestBody(),UTF8);
+        try {
+            return RigorApiCodec.FromJson(reader,bodyClass);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    protected static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body=json.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type","application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status,body.length);
+        OutputStream out=exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    protected static String error(String result, String message) {
+        RigorApiError error=new RigorApiError();
+        error.IsError=true;
+        error.result=result;
+        error.message=message;
+        return RigorApiCodec.ToJson(error);
+    }
+
+    protected static String queryString(String query, String name) {
+        if(query==null) {
+            return null;
+        }
+        for(String param: query.split("&")) {
+            int eq=param.indexOf('=');
+            if(eq>0 && param.substring(0,eq).equals(name)) {
+                try {
+                    return URLDecoder.decode(param.substring(eq+1),"UTF-8");
+                }
+                catch (Exception e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    protected static int queryInt(String query, String name, int defaultValue) {
+        String value=queryString(query,name);
+        try {
+            return value==null ? defaultValue : Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static final Pattern TEST=Pattern.compile("tests/(\\d+)");
+    private static final Pattern SNAPSHOTS=Pattern.compile("tests/(\\d+)/snapshots");
+    private static final Pattern SNAPSHOT=Pattern.compile("tests/(\\d+)/snapshots/(\\d+)");
+    private static final Pattern DEFECTS=Pattern.compile("tests/(\\d+)/snapshots/(\\d+)/defects");
+    private static final Charset UTF8=Charset.forName("UTF-8");
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final Map<Integer,List<RigorApiTag>> testTags=new ConcurrentHashMap<Integer,List<RigorApiTag>>();
+    private final Map<Integer,Snapshot> snapshots=new ConcurrentHashMap<Integer,Snapshot>();
+    private final AtomicInteger nextSnapshotID=new AtomicInteger(1000);
+
+    private final AtomicLong requests=new AtomicLong();
+    private final AtomicLong injectedErrors=new AtomicLong();
+    private final AtomicLong throttled=new AtomicLong();
+    private final ConcurrentHashMap<String,AtomicLong> routeCounts=new ConcurrentHashMap<String,AtomicLong>();
+
+    private final Random random=new Random(42);
+    private long throttleSecond=0;
+    private int throttleCount=0;
+}
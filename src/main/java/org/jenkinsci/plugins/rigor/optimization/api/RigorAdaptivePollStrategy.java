@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+//
+// Polling cadence learned from past builds. The first poll is scheduled just before the
+// earliest expected completion of the outstanding tests; once a test is overdue, polls back
+// off in proportion to how late it is. Every delay is jittered so concurrent builds don't
+// poll in lock-step. Tests we've never seen complete fall back to the fixed cadence.
+//
+
+public class RigorAdaptivePollStrategy implements RigorPollStrategy {
+    public static final long MinDelayMS=5000;
+    public static final long MaxOverdueDelayMS=30000;
+
+    // Poll a little ahead of the expected completion time
+    public static final double EarlyFraction=0.9;
+
+    // +/- fraction of random jitter applied to each delay
+    public static final double JitterFraction=0.2;
+
+    public RigorAdaptivePollStrategy(RigorScanHistory history) {
+        this.history=history;
+    }
+
+    public long FirstPollDelayMS(List<RigorApiSnapshotResult> started) {
+        Long expected=earliestExpectedMS(started);
+        if(expected==null) {
+            return jitter(this.fallback.FirstPollDelayMS(started));
+        }
+        return jitter(Math.max(MinDelayMS,Math.round(expected*EarlyFraction)));
+    }
+
+    public long NextPollDelayMS(List<RigorApiSnapshotResult> outstanding, long elapsedMS, int pollCount) {
+        Long expected=earliestExpectedMS(outstanding);
+        if(expected==null) {
+            return jitter(this.fallback.NextPollDelayMS(outstanding, elapsedMS, pollCount));
+        }
+
+        // Not due yet, wait until just before it is
+        long dueInMS=Math.round(expected*EarlyFraction)-elapsedMS;
+        if(dueInMS>MinDelayMS) {
+            return jitter(dueInMS);
+        }
+
+        // Overdue, back off the later it runs
+        long overdueMS=Math.max(0,elapsedMS-expected);
+        return jitter(Math.min(MaxOverdueDelayMS,Math.max(MinDelayMS,overdueMS/2)));
+    }
+
+    public void RecordCompletion(Integer testID, long durationMS) {
+        this.history.RecordDuration(testID,durationMS);
+    }
+
+    // Soonest any of these tests is expected to finish, or null if any is unknown
+    protected Long earliestExpectedMS(List<RigorApiSnapshotResult> snapshots) {
+        Long earliest=null;
+        for(RigorApiSnapshotResult snapshot: snapshots) {
+            Long expected=this.history.ExpectedDurationMS(snapshot.test_id);
+            if(expected==null) {
+                return null;
+            }
+            if(earliest==null || expected<earliest) {
+                earliest=expected;
+            }
+        }
+        return earliest;
+    }
+
+    protected long jitter(long delayMS) {
+        double factor=1 + JitterFraction*(2*ThreadLocalRandom.current().nextDouble()-1);
+        return Math.round(delayMS*factor);
+    }
+
+    protected RigorScanHistory history;
+    protected RigorPollStrategy fallback=new RigorFixedPollStrategy();
+}
@@ -1,51 +1,145 @@
 package org.jenkinsci.plugins.rigor.optimization.api;
 
-import com.google.gson.Gson;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+import jenkins.util.Timer;
 import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
 
-import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 //
 // Wraps direct calls to Rigor Optimization API
 //
+// Each call has a non-blocking "...Async" form returning a ListenableFuture, so callers can
+// fan out and compose requests. The blocking forms simply wait on the async result.
+// Cancelling an async result abandons the request: the HTTP exchange is cancelled and
+// nothing more is sent for it.
+//
 
 public class RigorApiClient {
-    private static String API_ENDPOINT="https://optimization-api.rigor.com/v2/";
+    public static final String DefaultApiEndpoint="https://optimization-api.rigor.com/v2/";
+
+    // Largest page the API returns, so the most snapshot ids one GetSnapshots call can ask for
+    public static final int MaxPageSize=100;
+
+    // Base URL of the API, set from the global configuration. The default can be changed
+    // (e.g. to a local stub) with the
+    // org.jenkinsci.plugins.rigor.optimization.api.RigorApiClient.endpoint system property.
+    private static volatile String API_ENDPOINT=defaultApiEndpoint();
+
+    // Path part of the endpoint (e.g. /v2/), worked out once rather than on every request
+    private static volatile String API_BASE_PATH=basePath(API_ENDPOINT);
+
+    // Point every client at another API base URL (ending in '/'), or back to the default if blank
+    public static void SetApiEndpoint(String endpoint) {
+        String updated=(endpoint==null || endpoint.trim().length()==0) ? defaultApiEndpoint() : endpoint.trim();
+        API_BASE_PATH=basePath(updated);
+        API_ENDPOINT=updated;
+    }
+
+    public static String GetApiEndpoint() {
+        return API_ENDPOINT;
+    }
+
+    public static String GetApiBasePath() {
+        return API_BASE_PATH;
+    }
+
+    protected static String defaultApiEndpoint() {
+        return System.getProperty(RigorApiClient.class.getName() + ".endpoint",DefaultApiEndpoint);
+    }
+
+    // Null if the endpoint isn't a valid URI (requests to it will fail anyway)
+    protected static String basePath(String endpoint) {
+        try {
+            return URI.create(endpoint).getPath();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
     public RigorApiClient(String apikey) {
         this.apikey=apikey;
+        this.keyFingerprint=Utils.Fingerprint(apikey);
+    }
+
+    // Non-secret identifier of our API key, for keying state shared between clients
+    public String getKeyFingerprint() {
+        return this.keyFingerprint;
     }
 
     // Validate successful connection to Rigor Optimization API using the supplied key
-    public RigorApiResponse TestConnection() {
+    public RigorApiResponse TestConnection() throws Exception {
+        return await(TestConnectionAsync());
+    }
+
+    public ListenableFuture<RigorApiResponse> TestConnectionAsync() {
         // Call Get Tests, should always return 200 ok if our credentials are valid
         String url="tests?p.per_page=1";
-        return makeGetRequest(url);
+        return makeGetRequestAsync(url,null);
     }
 
     // Test for existence of a specific performance test ID
-    public RigorApiResponse TestForValidTestID(Integer testID) {
-        // Call Get Tests, should always return 200 ok if our credentials are valid
+    public RigorApiResponse TestForValidTestID(Integer testID) throws Exception {
+        return await(TestForValidTestIDAsync(testID));
+    }
+
+    public ListenableFuture<RigorApiResponse> TestForValidTestIDAsync(Integer testID) {
+        // Call Get Test, returns 200 ok if the test exists. The test's details are decoded into
+        // the response Result.
         String url="tests/" + testID.toString();
-        return makeGetRequest(url);
+        return makeGetRequestAsync(url,RigorApiTestResult.class);
+    }
+
+    // Call Get Tests for one page of the tests visible to our API key
+    public RigorApiTestResultList GetTests(int page, int perPage) throws Exception {
+        return await(GetTestsAsync(page, perPage));
+    }
+
+    public ListenableFuture<RigorApiTestResultList> GetTestsAsync(int page, int perPage) {
+        String url="tests?p.page=" + page + "&p.per_page=" + perPage;
+        return decodeResult(makeGetRequestAsync(url,RigorApiTestResultList.class),RigorApiTestResultList.class,
+                "Error listing tests (page " + page + "): ");
     }
 
     // Invoke the Create snapshot API, returning the newly created snapshot info
     public RigorApiSnapshotResult StartSnapshot(Integer testID, String tagName)
             throws Exception {
-        Gson gson = new Gson();
+        return await(StartSnapshotAsync(testID, tagName));
+    }
+
+    public ListenableFuture<RigorApiSnapshotResult> StartSnapshotAsync(Integer testID, String tagName) {
         String url="tests/" + testID.toString() + "/snapshots";
 
         //
@@ -64,60 +158,88 @@ public class RigorApiClient {
         // Serialize it
         String body;
         try {
-            body=gson.toJson(payload);
+            body=RigorApiCodec.ToJson(payload);
         }
         catch (Exception e) {
-            throw new Exception("Error creating snapshot payload for test " + testID.toString() + ": " + e.getMessage());
+            return Futures.immediateFailedFuture(new Exception("Error creating snapshot payload for test " + testID.toString() + ": " + e.getMessage()));
         }
 
         //
-        // Make the post
+        // Make the post, pulling out the result and noting when the scan started
         //
-        RigorApiResponse response=makePostRequest(url,body);
-        if(!response.Success()) {
-            throw new Exception("Error creating snapshot for test " + testID.toString() + ": " + response.FormatError());
-        }
+        final ListenableFuture<RigorApiSnapshotResult> created=decodeResult(makePostRequestAsync(url,body,RigorApiSnapshotResult.class),
+                RigorApiSnapshotResult.class,"Error creating snapshot for test " + testID.toString() + ": ");
+        final SettableFuture<RigorApiSnapshotResult> result=SettableFuture.create();
+        Futures.addCallback(created, new FutureCallback<RigorApiSnapshotResult>() {
+            @Override
+            public void onSuccess(RigorApiSnapshotResult snapshot) {
+                if(snapshot!=null) {
+                    snapshot.StartedTimeMS=System.currentTimeMillis();
+                }
+                result.set(snapshot);
+            }
 
-        //
-        // Pull out the result
-        //
-        try {
-            RigorApiSnapshotResult result=gson.fromJson(response.ResponseBody,RigorApiSnapshotResult.class);
-            return result;
-        }
-        catch (Exception e) {
-            throw new Exception("Error creating snapshot for test " + testID.toString() + ": " + e.getMessage());
-        }
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+        propagateCancellation(result,created);
+        return result;
     }
 
     // Call Get Snapshot Detail to get current snapshot state
     public RigorApiSnapshotResult GetSnapshot(Integer testID,
                                               Integer snapshotID)
             throws Exception {
+        return await(GetSnapshotAsync(testID, snapshotID));
+    }
 
+    public ListenableFuture<RigorApiSnapshotResult> GetSnapshotAsync(Integer testID,
+                                                                     Integer snapshotID) {
         String url="tests/" + testID.toString() + "/snapshots/" + snapshotID.toString();
 
-        // Make the request
-        RigorApiResponse response=makeGetRequest(url);
-        if(!response.Success()) {
-            throw new Exception("Error fetching snapshot " + snapshotID.toString() + " for test " + testID.toString() + ": " + response.FormatError());
+        // Make the request, pulling out the result
+        return decodeResult(makeGetRequestAsync(url,RigorApiSnapshotResult.class),RigorApiSnapshotResult.class,
+                "Error fetching snapshot " + snapshotID.toString() + " for test " + testID.toString() + ": ");
+    }
+
+    // Call Get Snapshots for a test, filtered to the given snapshot ids, to get their current states in one request.
+    // The ids all come back on a single page, so no more than MaxPageSize of them.
+    public RigorApiSnapshotResultList GetSnapshots(Integer testID,
+                                                   List<Integer> snapshotIDs)
+            throws Exception {
+        return await(GetSnapshotsAsync(testID, snapshotIDs));
+    }
+
+    public ListenableFuture<RigorApiSnapshotResultList> GetSnapshotsAsync(Integer testID,
+                                                                          List<Integer> snapshotIDs) {
+        // Everything has to come back on the one page we ask for
+        if(snapshotIDs.size()>MaxPageSize) {
+            return Futures.immediateFailedFuture(new IllegalArgumentException("At most " + MaxPageSize + " snapshot ids per request, got " + snapshotIDs.size()));
         }
 
-        // Pull out the result
+        String url="tests/" + testID.toString() + "/snapshots";
         try {
-            Gson gson = new Gson();
-            RigorApiSnapshotResult result=gson.fromJson(response.ResponseBody,RigorApiSnapshotResult.class);
-            return result;
+            url+="?f.snapshot_ids=" + URLEncoder.encode(Utils.ToCSV(new ArrayList<Integer>(snapshotIDs)),"UTF-8");
         }
         catch (Exception e) {
-            throw new Exception("Error fetching snapshot " + snapshotID.toString() + " for test " + testID.toString() + ": " + response.FormatError());
+            return Futures.immediateFailedFuture(e);
         }
+        url+="&p.page=1&p.per_page=" + snapshotIDs.size();
+
+        // Make the request, pulling out the result
+        return decodeResult(makeGetRequestAsync(url,RigorApiSnapshotResultList.class),RigorApiSnapshotResultList.class,
+                "Error fetching snapshots for test " + testID.toString() + ": ");
     }
 
     // Invoke the Update Snapshot API call, setting new tags
     public RigorApiSnapshotResult UpdateTestWithTags(Integer testID, ArrayList<RigorApiTag> tags)
             throws Exception {
-        Gson gson = new Gson();
+        return await(UpdateTestWithTagsAsync(testID, tags));
+    }
+
+    public ListenableFuture<RigorApiSnapshotResult> UpdateTestWithTagsAsync(Integer testID, ArrayList<RigorApiTag> tags) {
         String url="tests/" + testID.toString();
 
         //
@@ -129,257 +251,546 @@ public class RigorApiClient {
         // Serialize it
         String body;
         try {
-            body=gson.toJson(payload);
+            body=RigorApiCodec.ToJson(payload);
         }
         catch (Exception e) {
-            throw new Exception("Error creating update test payload for test " + testID.toString() + ": " + e.getMessage());
+            return Futures.immediateFailedFuture(new Exception("Error creating update test payload for test " + testID.toString() + ": " + e.getMessage()));
         }
 
         //
-        // Make the PUT request
+        // Make the PUT request, pulling out the result
         //
-        RigorApiResponse response=makePutRequest(url,body);
-        if(!response.Success()) {
-            throw new Exception("Error updating test for test " + testID.toString() + ": " + response.FormatError());
-        }
-
-        //
-        // Pull out the result
-        //
-        try {
-            RigorApiSnapshotResult result=gson.fromJson(response.ResponseBody,RigorApiSnapshotResult.class);
-            return result;
-        }
-        catch (Exception e) {
-            throw new Exception("Error updating test for test " + testID.toString() + ": " + e.getMessage());
-        }
+        return decodeResult(makePutRequestAsync(url,body,RigorApiSnapshotResult.class),RigorApiSnapshotResult.class,
+                "Error updating test for test " + testID.toString() + ": ");
     }
 
     // Invoke the Update Snapshot API call, setting new tags
     public RigorApiSnapshotResult UpdateSnapshotWithTags(Integer testID, Integer snapshot_id, ArrayList<RigorApiTag> tags)
             throws Exception {
-        Gson gson = new Gson();
+        return await(UpdateSnapshotWithTagsAsync(testID, snapshot_id, tags));
+    }
+
+    public ListenableFuture<RigorApiSnapshotResult> UpdateSnapshotWithTagsAsync(Integer testID, Integer snapshot_id, ArrayList<RigorApiTag> tags) {
+        ArrayList<Integer> snapshotIDs=new ArrayList<Integer>();
+        snapshotIDs.add(snapshot_id);
+        return UpdateSnapshotsWithTagsAsync(testID,snapshotIDs,tags);
+    }
+
+    // Add the same tags to several snapshots of one test in a single call
+    public RigorApiSnapshotResult UpdateSnapshotsWithTags(Integer testID, List<Integer> snapshotIDs, ArrayList<RigorApiTag> tags)
+            throws Exception {
+        return await(UpdateSnapshotsWithTagsAsync(testID, snapshotIDs, tags));
+    }
+
+    public ListenableFuture<RigorApiSnapshotResult> UpdateSnapshotsWithTagsAsync(Integer testID, List<Integer> snapshotIDs, ArrayList<RigorApiTag> tags) {
         String url="tests/" + testID.toString() + "/snapshots";
 
         //
         // Update snapshot payload
         //
         RigorApiSnapshotUpdate payload=new RigorApiSnapshotUpdate();
-        payload.snapshot_ids.add(snapshot_id);
+        payload.snapshot_ids.addAll(snapshotIDs);
         payload.tags=tags;
 
         // Serialize it
         String body;
         try {
-            body=gson.toJson(payload);
+            body=RigorApiCodec.ToJson(payload);
         }
         catch (Exception e) {
-            throw new Exception("Error creating update snapshot payload for test " + testID.toString() + ": " + e.getMessage());
+            return Futures.immediateFailedFuture(new Exception("Error creating update snapshot payload for test " + testID.toString() + ": " + e.getMessage()));
         }
 
         //
-        // Make the PUT request
+        // Make the PUT request, pulling out the result
         //
-        RigorApiResponse response=makePutRequest(url,body);
-        if(!response.Success()) {
-            throw new Exception("Error updating snapshot for test " + testID.toString() + ": " + response.FormatError());
+        return decodeResult(makePutRequestAsync(url,body,RigorApiSnapshotResult.class),RigorApiSnapshotResult.class,
+                "Error updating snapshot for test " + testID.toString() + ": ");
+    }
+
+    // Pull back one page of the (first party) defects found in a snapshot, with optional extra
+    // filter parameters. See RigorDefectPager for reading a whole listing.
+    public ListenableFuture<RigorApiDefectResultList> GetDefectsPageAsync(Integer testID,
+                                                                          Integer snapshotID,
+                                                                          String filter,
+                                                                          int page,
+                                                                          int perPage) {
+        String url="tests/" + testID.toString() + "/snapshots/" + snapshotID.toString() + "/defects";
+        url+="?f.show_tpc=No";
+        if(filter!=null && filter.length()>0) {
+            url+="&" + filter;
         }
+        url+="&p.page=" + page + "&p.per_page=" + perPage;
 
-        //
-        // Pull out the result
-        //
+        // Make the request, pulling out the result
+        return decodeResult(makeGetRequestAsync(url,RigorApiDefectResultList.class),RigorApiDefectResultList.class,
+                "Error fetching defects (page " + page + ") for snapshot " + snapshotID.toString() + ", test " + testID.toString() + ": ");
+    }
+
+    //
+    // Utility Functions
+    //
+
+    // Wait on an async call, rethrowing the original error if it failed
+    public static <T> T await(Future<T> future) throws Exception {
         try {
-            RigorApiSnapshotResult result=gson.fromJson(response.ResponseBody,RigorApiSnapshotResult.class);
-            return result;
+            return future.get();
         }
-        catch (Exception e) {
-            throw new Exception("Error updating snapshot for test " + testID.toString() + ": " + e.getMessage());
+        catch (ExecutionException e) {
+            if(e.getCause() instanceof Exception) {
+                throw (Exception)e.getCause();
+            }
+            throw e;
         }
     }
 
-    // Get details about any critical defects for a snapshot
-    public RigorApiDefectResultList GetCriticalDefects(Integer testID,
-                                                       Integer snapshotID)
-            throws Exception {
+    // Unpack the decoded result of an API response, failing with errorPrefix + reason
+    protected <T> ListenableFuture<T> decodeResult(ListenableFuture<RigorApiResponse> responseFuture,
+                                                   final Class<T> resultClass,
+                                                   final String errorPrefix) {
+        final SettableFuture<T> result=SettableFuture.create();
+        Futures.addCallback(responseFuture, new FutureCallback<RigorApiResponse>() {
+            @Override
+            public void onSuccess(RigorApiResponse response) {
+                if(!response.Success()) {
+                    result.setException(new RigorApiException(errorPrefix + response.FormatError(),
+                            RigorRetryPolicy.IsRetryable(true,response)));
+                    return;
+                }
+                if(response.DecodeError!=null) {
+                    result.setException(new Exception(errorPrefix + response.DecodeError));
+                    return;
+                }
+                try {
+                    result.set(resultClass.cast(response.Result));
+                }
+                catch (Exception e) {
+                    result.setException(new Exception(errorPrefix + e.getMessage()));
+                }
+            }
 
-        String url="tests/" + testID.toString() + "/snapshots/" + snapshotID.toString() + "/defects";
-        url+="?f.show_tpc=No&f.severity=Critical";
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+        propagateCancellation(result,responseFuture);
+        return result;
+    }
 
-        // Make the request
-        RigorApiResponse response=makeGetRequest(url);
-        if(!response.Success()) {
-            throw new Exception("Error fetching critical defects for snapshot " + snapshotID.toString() + ", test " + testID.toString() + ": " + response.FormatError());
-        }
+    // Cancelling the derived future cancels the one it was derived from
+    protected static void propagateCancellation(final ListenableFuture<?> derived, final Future<?> source) {
+        derived.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(derived.isCancelled()) {
+                    source.cancel(true);
+                }
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+    }
 
-        // Pull out the result
-        try {
-            Gson gson = new Gson();
-            RigorApiDefectResultList result=gson.fromJson(response.ResponseBody,RigorApiDefectResultList.class);
-            return result;
-        }
-        catch (Exception e) {
-            throw new Exception("Error fetching critical defects for snapshot " + snapshotID.toString() + " for test " + testID.toString() + ": " + response.FormatError());
+    // Make a GET request to the relative URL off the root API url, returning JSON response
+    protected RigorApiResponse makeGetRequest(String relativeURL, Class<?> resultClass) throws Exception {
+        return await(makeGetRequestAsync(relativeURL, resultClass));
+    }
+
+    // Identical GETs under the same key that are already in flight share the one exchange.
+    // The shared response (and decoded result) must be treated as read-only.
+    protected ListenableFuture<RigorApiResponse> makeGetRequestAsync(String relativeURL, Class<?> resultClass) {
+        String key=this.keyFingerprint + " " + API_ENDPOINT + relativeURL + " " + (resultClass==null ? "" : resultClass.getName());
+
+        while(true) {
+            SharedGet shared=new SharedGet(key);
+            SharedGet existing=inFlightGets.putIfAbsent(key,shared);
+            if(existing!=null) {
+                ListenableFuture<RigorApiResponse> mine=existing.Follow();
+                if(mine!=null) {
+                    coalescedGets.incrementAndGet();
+                    return mine;
+                }
+
+                // Everyone waiting on it gave up and it's being cancelled, start a new one
+                inFlightGets.remove(key,existing);
+                continue;
+            }
+
+            // We're first, make the request for everyone. It leaves the in-flight map before
+            // completing, so later callers get a fresh answer rather than this one.
+            ListenableFuture<RigorApiResponse> mine=shared.Follow();
+            shared.Start(executeRequestAsync(new HttpGet(API_ENDPOINT + relativeURL),null,resultClass));
+            return mine;
         }
     }
 
-    // Pull back details for specific Defect ids for a specific snapshot, if found
-    public RigorApiDefectResultList GetSpecificDefects(Integer testID,
-                                                       Integer snapshotID,
-                                                       ArrayList<Integer> defectIDs)
-            throws Exception {
+    // Number of GETs answered by joining an identical request already in flight
+    public static long getCoalescedGetCount() {
+        return coalescedGets.get();
+    }
 
-        String url="tests/" + testID.toString() + "/snapshots/" + snapshotID.toString() + "/defects";
-        url+="?f.show_tpc=No";
-        url+="&f.defect_ids=" + URLEncoder.encode(Utils.ToCSV(defectIDs),"UTF-8");
-        url+="&p.per_page=" + defectIDs.size(); // (in case there's more than the default page size specified)
+    // One GET in flight and everyone waiting on it. Each caller gets their own view of the
+    // response, so one caller cancelling doesn't affect the rest; the request itself is only
+    // cancelled once every caller has cancelled.
+    protected static class SharedGet {
+        SharedGet(String key) {
+            this.key=key;
+        }
 
-        // Make the request
-        RigorApiResponse response=makeGetRequest(url);
-        if(!response.Success()) {
-            throw new Exception("Error fetching found defects for snapshot " + snapshotID.toString() + ", test " + testID.toString() + ": " + response.FormatError());
+        // A new caller's view of the response, or null if the request is already abandoned
+        synchronized ListenableFuture<RigorApiResponse> Follow() {
+            if(this.abandoned) {
+                return null;
+            }
+            ++this.followers;
+
+            final SettableFuture<RigorApiResponse> mine=SettableFuture.create();
+            Futures.addCallback(this.response, new FutureCallback<RigorApiResponse>() {
+                @Override
+                public void onSuccess(RigorApiResponse response) {
+                    mine.set(response);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    mine.setException(t);
+                }
+            }, RigorApiHttpTransport.Get().getWorkerExecutor());
+            mine.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if(mine.isCancelled()) {
+                        leave();
+                    }
+                }
+            }, RigorApiHttpTransport.Get().getWorkerExecutor());
+            return mine;
         }
 
-        // Pull out the result
-        try {
-            Gson gson = new Gson();
-            RigorApiDefectResultList result=gson.fromJson(response.ResponseBody,RigorApiDefectResultList.class);
-            return result;
+        // Pass the request's outcome on to everyone following it
+        void Start(ListenableFuture<RigorApiResponse> request) {
+            synchronized (this) {
+                this.request=request;
+                if(this.abandoned) {
+                    request.cancel(true);
+                }
+            }
+            Futures.addCallback(request, new FutureCallback<RigorApiResponse>() {
+                @Override
+                public void onSuccess(RigorApiResponse result) {
+                    inFlightGets.remove(key,SharedGet.this);
+                    response.set(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inFlightGets.remove(key,SharedGet.this);
+                    response.setException(t);
+                }
+            }, RigorApiHttpTransport.Get().getWorkerExecutor());
         }
-        catch (Exception e) {
-            throw new Exception("Error fetching found defects for snapshot " + snapshotID.toString() + " for test " + testID.toString() + ": " + response.FormatError());
+
+        // A caller cancelled, cancel the request if they were the last one waiting
+        protected synchronized void leave() {
+            if(--this.followers>0 || this.response.isDone()) {
+                return;
+            }
+            this.abandoned=true;
+            if(this.request!=null) {
+                this.request.cancel(true);
+            }
         }
+
+        private final String key;
+        private final SettableFuture<RigorApiResponse> response=SettableFuture.create();
+        private ListenableFuture<RigorApiResponse> request=null;
+        private int followers=0;
+        private boolean abandoned=false;
     }
 
-    //
-    // Utility Functions
-    //
+    // Make a POST request to the relative URL off the root API url, returning JSON response
+    protected RigorApiResponse makePostRequest(String relativeURL, String bodyToPost, Class<?> resultClass) throws Exception {
+        return await(makePostRequestAsync(relativeURL, bodyToPost, resultClass));
+    }
 
-    // Make a GET request to the relative URL off the root API url, returning JSON response
-    protected RigorApiResponse makeGetRequest(String relativeURL)  {
-        String url=API_ENDPOINT + relativeURL;
-        RigorApiResponse response=new RigorApiResponse();
+    protected ListenableFuture<RigorApiResponse> makePostRequestAsync(String relativeURL, String bodyToPost, Class<?> resultClass) {
+        HttpPost post=new HttpPost(API_ENDPOINT + relativeURL);
+        return executeRequestAsync(post,bodyToPost,resultClass);
+    }
 
-        try {
+    // Make a PUT request to the relative URL off the root API url, returning JSON response
+    protected RigorApiResponse makePutRequest(String relativeURL, String bodyToPut, Class<?> resultClass) throws Exception {
+        return await(makePutRequestAsync(relativeURL, bodyToPut, resultClass));
+    }
 
-            // Make GET request
-            HttpClient client = new DefaultHttpClient();
-            HttpGet request = new HttpGet(url);
+    protected ListenableFuture<RigorApiResponse> makePutRequestAsync(String relativeURL, String bodyToPut, Class<?> resultClass) {
+        HttpPut put=new HttpPut(API_ENDPOINT + relativeURL);
+        return executeRequestAsync(put,bodyToPut,resultClass);
+    }
+
+    // Send the request over the shared pooled transport, decoding a successful body into
+    // resultClass (null to discard it). Requests are paced by the per-key rate limiter, and
+    // transient failures retried per RigorRetryPolicy. The returned future succeeds unless
+    // cancelled; errors are reported through the response.
+    protected ListenableFuture<RigorApiResponse> executeRequestAsync(final HttpRequestBase request, String body, final Class<?> resultClass) {
+        final SettableFuture<RigorApiResponse> future=SettableFuture.create();
+
+        // Whatever the request is waiting on: the HTTP exchange, or the wait before sending
+        // or retrying it. Cancelling the future cancels that, and nothing more is sent.
+        // A cancelled request tells the circuit breaker nothing, but if it was the half-open
+        // trial its slot is freed rather than held until the trial times out.
+        final AtomicReference<Future<?>> pending=new AtomicReference<Future<?>>();
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(!future.isCancelled()) {
+                    return;
+                }
+                Future<?> step=pending.get();
+                if(step!=null) {
+                    step.cancel(true);
+                }
+                RigorCircuitBreaker.Get().RecordInconclusive(API_ENDPOINT,keyFingerprint);
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+
+        try {
             request.addHeader("Content-Type", "application/json");
             request.addHeader("Accept", "application/json");
             request.addHeader("API-KEY", this.apikey);
-            HttpResponse httpResponse = client.execute(request);
+            if(body!=null && request instanceof HttpEntityEnclosingRequestBase) {
+                ((HttpEntityEnclosingRequestBase)request).setEntity(new StringEntity(body));
+            }
+        }
+        catch (Exception e) {
+            RigorApiResponse response=new RigorApiResponse();
+            response.TransportError=e;
+            future.set(response);
+            return future;
+        }
 
-            // Get response
-            response.HttpStatusCode=httpResponse.getStatusLine().getStatusCode();
-            response.HttpStatusMessage =httpResponse.getStatusLine().getReasonPhrase();
+        // Don't pile on while the API is failing, let the caller give up straight away
+        if(!RigorCircuitBreaker.Get().AllowRequest(API_ENDPOINT,this.keyFingerprint)) {
+            RigorApiResponse response=new RigorApiResponse();
+            response.TransportError=new RigorApiException("Rigor Optimization API unavailable after repeated failures, try again later", false);
+            future.set(response);
+            return future;
+        }
+
+        sendAttempt(request,resultClass,future,pending,0);
+        return future;
+    }
 
-            BufferedReader rd = new BufferedReader(
-                    new InputStreamReader(httpResponse.getEntity().getContent(), Charset.defaultCharset()));
-            StringBuffer result = new StringBuffer();
-            String line = "";
-            while ((line = rd.readLine()) != null) {
-                result.append(line);
+    // Make one attempt at a request, scheduling another if it fails in a way worth retrying
+    protected void sendAttempt(final HttpRequestBase request, final Class<?> resultClass,
+                               final SettableFuture<RigorApiResponse> future, final AtomicReference<Future<?>> pending,
+                               final int retries) {
+        final SettableFuture<RigorApiResponse> attempt=SettableFuture.create();
+        Futures.addCallback(attempt, new FutureCallback<RigorApiResponse>() {
+            @Override
+            public void onSuccess(RigorApiResponse response) {
+                if(future.isCancelled()) {
+                    recordOutcome(response);
+                    return;     // the caller gave up on it
+                }
+                boolean idempotent=RigorRetryPolicy.IsIdempotent(request.getMethod());
+                if(!RigorRetryPolicy.ShouldRetry(idempotent,response,retries)) {
+                    recordOutcome(response);
+                    future.set(response);
+                    return;
+                }
+
+                long delayMS=RigorRetryPolicy.DelayMS(response,retries);
+                RigorMetrics.Get().RecordRetry();
+                LOGGER.fine("Retrying " + request.getMethod() + " " + request.getURI().getPath() + " in " + delayMS
+                        + "ms after: " + response.FormatError());
+                track(future,pending,Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        request.reset();
+                        sendAttempt(request,resultClass,future,pending,retries+1);
+                    }
+                }, delayMS, TimeUnit.MILLISECONDS));
             }
-            response.ResponseBody =result.toString();
 
-            if(!response.Success() && response.ResponseBody!=null) {
-                Gson gson = new Gson();
-                response.RigorError=gson.fromJson(response.ResponseBody,RigorApiError.class);
+            @Override
+            public void onFailure(Throwable t) {
+                RigorCircuitBreaker.Get().RecordInconclusive(API_ENDPOINT,keyFingerprint);
+                future.setException(t);
             }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+
+        // Wait our turn if this key is over its rate
+        long waitMS=RigorRateLimiter.Get().Reserve(this.keyFingerprint);
+        if(waitMS<=0) {
+            track(future,pending,sendRequest(request,new RigorApiResponse(),resultClass,attempt));
         }
-        catch (Exception e) {
-            response.HttpStatusCode=500;    // internal server error
-            response.HttpStatusMessage=e.getMessage();
+        else {
+            track(future,pending,Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    track(future,pending,sendRequest(request,new RigorApiResponse(),resultClass,attempt));
+                }
+            }, waitMS, TimeUnit.MILLISECONDS));
         }
+    }
 
-        return response;
+    // Note what the request is now waiting on, cancelling it straight away if the caller
+    // already gave up
+    protected static void track(SettableFuture<RigorApiResponse> future, AtomicReference<Future<?>> pending, Future<?> step) {
+        if(step==null) {
+            return;
+        }
+        pending.set(step);
+        if(future.isCancelled()) {
+            step.cancel(true);
+        }
     }
 
-    // Make a POST request to the relative URL off the root API url, returning JSON response
-    protected RigorApiResponse makePostRequest(String relativeURL, String bodyToPost)  {
-        String url=API_ENDPOINT + relativeURL;
-        RigorApiResponse response=new RigorApiResponse();
+    // Let the circuit breaker know how the service did with a finished request
+    protected void recordOutcome(RigorApiResponse response) {
+        // We gave up on it, or were told to slow down: says nothing about the service's health
+        if(response.TransportError instanceof CancellationException
+                || (response.TransportError==null && response.HttpStatusCode==429)) {
+            RigorCircuitBreaker.Get().RecordInconclusive(API_ENDPOINT,this.keyFingerprint);
+        }
+        else if(RigorRetryPolicy.IsRetryable(true,response)) {
+            RigorCircuitBreaker.Get().RecordFailure(API_ENDPOINT,this.keyFingerprint);
+        }
+        else {
+            RigorCircuitBreaker.Get().RecordSuccess(API_ENDPOINT,this.keyFingerprint);
+        }
+    }
 
+    // Hand a prepared request to the HTTP client, completing future with the response.
+    // Returns the client's future for the exchange, or null if it couldn't be started.
+    protected Future<HttpResponse> sendRequest(final HttpRequestBase request, final RigorApiResponse response, final Class<?> resultClass,
+                                               final SettableFuture<RigorApiResponse> future) {
+        final long started=System.nanoTime();
         try {
-
-            // Make PUT request
-            HttpClient client = new DefaultHttpClient();
-            HttpPost post = new HttpPost(url);
-            post.addHeader("Content-Type", "application/json");
-            post.addHeader("Accept", "application/json");
-            post.addHeader("API-KEY", this.apikey);
-            StringEntity entity=new StringEntity(bodyToPost);
-            post.setEntity(entity);
-            HttpResponse httpResponse = client.execute(post);
-
-            // Get response
-            response.HttpStatusCode=httpResponse.getStatusLine().getStatusCode();
-            response.HttpStatusMessage =httpResponse.getStatusLine().getReasonPhrase();
-
-            BufferedReader rd = new BufferedReader(
-                    new InputStreamReader(httpResponse.getEntity().getContent(),Charset.defaultCharset()));
-            StringBuffer result = new StringBuffer();
-            String line = "";
-            while ((line = rd.readLine()) != null) {
-                result.append(line);
-            }
-            response.ResponseBody =result.toString();
-
-            if(!response.Success() && response.ResponseBody!=null) {
-                Gson gson = new Gson();
-                response.RigorError=gson.fromJson(response.ResponseBody,RigorApiError.class);
-            }
+            return RigorApiHttpTransport.Get().getClient().execute(request, new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(final HttpResponse httpResponse) {
+                    // Read the body on a worker, keeping the I/O dispatch threads free
+                    RigorApiHttpTransport.Get().getWorkerExecutor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            readResponse(httpResponse, response, resultClass);
+                            finishExchange(request, response, started, future);
+                        }
+                    });
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    response.TransportError=e;
+                    finishExchange(request, response, started, future);
+                }
+
+                @Override
+                public void cancelled() {
+                    response.TransportError=new CancellationException("Request cancelled");
+                    finishExchange(request, response, started, future);
+                }
+            });
         }
         catch (Exception e) {
-            response.HttpStatusCode=500;    // internal server error
-            response.HttpStatusMessage=e.getMessage();
+            response.TransportError=e;
+            finishExchange(request, response, started, future);
+            return null;
         }
-
-        return response;
     }
 
-    // Make a POST request to the relative URL off the root API url, returning JSON response
-    protected RigorApiResponse makePutRequest(String relativeURL, String bodyToPut)  {
-        String url=API_ENDPOINT + relativeURL;
-        RigorApiResponse response=new RigorApiResponse();
+    // Time the exchange, then pass the response on
+    protected void finishExchange(HttpRequestBase request, RigorApiResponse response, long started,
+                                  SettableFuture<RigorApiResponse> future) {
+        RigorMetrics.Get().RecordRequest(request.getMethod(), request.getURI().getPath(), response, System.nanoTime()-started);
+        future.set(response);
+    }
 
+    // Copy status of a completed HTTP exchange into our response, decoding the JSON body
+    // into resultClass (or the error object on failure).
+    //
+    // The async client has already buffered the whole body in memory by the time we get it,
+    // so this doesn't save that copy. It only skips building a String of the body on the way
+    // to the decoder. With debug logging on the body is kept as text too, a second copy.
+    protected void readResponse(HttpResponse httpResponse, RigorApiResponse response, Class<?> resultClass) {
+        HttpEntity entity=httpResponse.getEntity();
         try {
-
-            // Make PUT request
-            HttpClient client = new DefaultHttpClient();
-            HttpPut put=new HttpPut(url);
-            put.addHeader("Content-Type", "application/json");
-            put.addHeader("Accept", "application/json");
-            put.addHeader("API-KEY", this.apikey);
-            StringEntity entity=new StringEntity(bodyToPut);
-            put.setEntity(entity);
-            HttpResponse httpResponse = client.execute(put);
-
-            // Get response
             response.HttpStatusCode=httpResponse.getStatusLine().getStatusCode();
             response.HttpStatusMessage =httpResponse.getStatusLine().getReasonPhrase();
+            response.RetryAfterMS=parseRetryAfter(httpResponse.getFirstHeader("Retry-After"));
+
+            Class<?> decodeClass=response.Success() ? resultClass : RigorApiError.class;
+            if(entity==null || decodeClass==null) {
+                return;
+            }
 
-            BufferedReader rd = new BufferedReader(
-                    new InputStreamReader(httpResponse.getEntity().getContent(),Charset.defaultCharset()));
-            StringBuffer result = new StringBuffer();
-            String line = "";
-            while ((line = rd.readLine()) != null) {
-                result.append(line);
+            Charset charset=ContentType.getOrDefault(entity).getCharset();
+            if(charset==null) {
+                charset=Charset.forName("UTF-8");   // JSON default
             }
-            response.ResponseBody =result.toString();
 
-            if(!response.Success() && response.ResponseBody!=null) {
-                Gson gson = new Gson();
-                response.RigorError=gson.fromJson(response.ResponseBody,RigorApiError.class);
+            Object decoded;
+            if(LOGGER.isLoggable(Level.FINE)) {
+                response.ResponseBody=EntityUtils.toString(entity,charset);
+                LOGGER.fine("Rigor API response " + response.HttpStatusCode + ": " + response.ResponseBody);
+                decoded=RigorApiCodec.FromJson(response.ResponseBody,decodeClass);
+            }
+            else {
+                Reader reader=new InputStreamReader(entity.getContent(),charset);
+                try {
+                    decoded=RigorApiCodec.FromJson(reader,decodeClass);
+                }
+                finally {
+                    reader.close();
+                }
+            }
+
+            if(response.Success()) {
+                response.Result=decoded;
+            }
+            else {
+                response.RigorError=(RigorApiError)decoded;
             }
         }
         catch (Exception e) {
-            response.HttpStatusCode=500;    // internal server error
-            response.HttpStatusMessage=e.getMessage();
+            if(response.Success()) {
+                // Got a 200 we couldn't decode
+                response.DecodeError=e.getMessage();
+            }
+            // else, error body wasn't a Rigor error object, the status is enough
         }
+        finally {
+            try {
+                EntityUtils.consume(entity);
+            }
+            catch (Exception e) {
+                // buffered in memory, nothing to release
+            }
+        }
+    }
 
-        return response;
+    // Retry-After is either a number of seconds or an HTTP date
+    protected static Long parseRetryAfter(Header header) {
+        if(header==null || header.getValue()==null) {
+            return null;
+        }
+        String value=header.getValue().trim();
+        try {
+            return Long.parseLong(value)*1000;
+        }
+        catch (NumberFormatException e) {
+            Date date=DateUtils.parseDate(value);
+            return date==null ? null : Math.max(0,date.getTime()-System.currentTimeMillis());
+        }
     }
 
+    // GETs currently in flight, by key + URL + result type
+    private static final ConcurrentHashMap<String,SharedGet> inFlightGets=new ConcurrentHashMap<String,SharedGet>();
+    private static final AtomicLong coalescedGets=new AtomicLong();
+
+    private static final Logger LOGGER=Logger.getLogger(RigorApiClient.class.getName());
+
     private String apikey;
+    private String keyFingerprint;
 }
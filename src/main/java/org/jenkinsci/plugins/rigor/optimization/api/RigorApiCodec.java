@@ -0,0 +1,518 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+//
+// JSON encoding and decoding for the API objects, shared by every request. Gson is thread safe,
+// so one instance is built once with hand written adapters for each object we send or receive,
+// rather than a new Gson per request working the objects out by reflection.
+//
+// Adapters skip fields they don't know, so new fields in API responses don't break decoding,
+// and leave out null fields when writing, as Gson's default does.
+//
+
+public class RigorApiCodec {
+    private static final Gson gson=new GsonBuilder()
+            .registerTypeAdapter(RigorApiTag.class,new TagAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiError.class,new ErrorAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiSnapshotResult.class,new SnapshotResultAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiSnapshotResultList.class,new SnapshotResultListAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiDefectResult.class,new DefectResultAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiDefectResultList.class,new DefectResultListAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiTestResult.class,new TestResultAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiTestResultList.class,new TestResultListAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiSnapshotCreate.class,new SnapshotCreateAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiSnapshotUpdate.class,new SnapshotUpdateAdapter().nullSafe())
+            .registerTypeAdapter(RigorApiTestUpdate.class,new TestUpdateAdapter().nullSafe())
+            .create();
+
+    public static String ToJson(Object payload) {
+        return gson.toJson(payload);
+    }
+
+    public static <T> T FromJson(String json, Class<T> resultClass) {
+        return gson.fromJson(json,resultClass);
+    }
+
+    public static <T> T FromJson(Reader reader, Class<T> resultClass) {
+        return gson.fromJson(reader,resultClass);
+    }
+
+    //
+    // Adapters
+    //
+
+    static class TagAdapter extends TypeAdapter<RigorApiTag> {
+        @Override
+        public void write(JsonWriter out, RigorApiTag tag) throws IOException {
+            out.beginObject();
+            writeString(out,"name",tag.name);
+            writeString(out,"priority",tag.priority);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiTag read(JsonReader in) throws IOException {
+            RigorApiTag tag=new RigorApiTag();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("name")) {
+                    tag.name=readString(in);
+                }
+                else if(field.equals("priority")) {
+                    tag.priority=readString(in);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return tag;
+        }
+    }
+
+    static class ErrorAdapter extends TypeAdapter<RigorApiError> {
+        @Override
+        public void write(JsonWriter out, RigorApiError error) throws IOException {
+            out.beginObject();
+            out.name("IsError").value(error.IsError);
+            out.name("IsSuccess").value(error.IsSuccess);
+            writeString(out,"result",error.result);
+            writeString(out,"message",error.message);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiError read(JsonReader in) throws IOException {
+            RigorApiError error=new RigorApiError();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("IsError")) {
+                    error.IsError=readBoolean(in);
+                }
+                else if(field.equals("IsSuccess")) {
+                    error.IsSuccess=readBoolean(in);
+                }
+                else if(field.equals("result")) {
+                    error.result=readString(in);
+                }
+                else if(field.equals("message")) {
+                    error.message=readString(in);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return error;
+        }
+    }
+
+    static class SnapshotResultAdapter extends TypeAdapter<RigorApiSnapshotResult> {
+        @Override
+        public void write(JsonWriter out, RigorApiSnapshotResult snapshot) throws IOException {
+            out.beginObject();
+            writeInteger(out,"test_id",snapshot.test_id);
+            writeInteger(out,"snapshot_id",snapshot.snapshot_id);
+            writeString(out,"status",snapshot.status);
+            writeString(out,"snapshot_url_guest",snapshot.snapshot_url_guest);
+            writeInteger(out,"zoompf_score",snapshot.zoompf_score);
+            writeInteger(out,"defect_count_critical_1pc",snapshot.defect_count_critical_1pc);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiSnapshotResult read(JsonReader in) throws IOException {
+            RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("test_id")) {
+                    snapshot.test_id=readInteger(in);
+                }
+                else if(field.equals("snapshot_id")) {
+                    snapshot.snapshot_id=readInteger(in);
+                }
+                else if(field.equals("status")) {
+                    snapshot.status=readString(in);
+                }
+                else if(field.equals("snapshot_url_guest")) {
+                    snapshot.snapshot_url_guest=readString(in);
+                }
+                else if(field.equals("zoompf_score")) {
+                    snapshot.zoompf_score=readInteger(in);
+                }
+                else if(field.equals("defect_count_critical_1pc")) {
+                    snapshot.defect_count_critical_1pc=readInteger(in);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return snapshot;
+        }
+    }
+
+    static class SnapshotResultListAdapter extends TypeAdapter<RigorApiSnapshotResultList> {
+        private final SnapshotResultAdapter snapshotAdapter=new SnapshotResultAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiSnapshotResultList list) throws IOException {
+            out.beginObject();
+            writeList(out,"snapshots",list.snapshots,snapshotAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiSnapshotResultList read(JsonReader in) throws IOException {
+            RigorApiSnapshotResultList list=new RigorApiSnapshotResultList();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("snapshots")) {
+                    list.snapshots=readList(in,snapshotAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return list;
+        }
+    }
+
+    static class DefectResultAdapter extends TypeAdapter<RigorApiDefectResult> {
+        @Override
+        public void write(JsonWriter out, RigorApiDefectResult defect) throws IOException {
+            out.beginObject();
+            writeInteger(out,"defect_id",defect.defect_id);
+            writeString(out,"severity",defect.severity);
+            writeString(out,"name",defect.name);
+            writeString(out,"defect_url_guest",defect.defect_url_guest);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiDefectResult read(JsonReader in) throws IOException {
+            RigorApiDefectResult defect=new RigorApiDefectResult();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("defect_id")) {
+                    defect.defect_id=readInteger(in);
+                }
+                else if(field.equals("severity")) {
+                    defect.severity=readString(in);
+                }
+                else if(field.equals("name")) {
+                    defect.name=readString(in);
+                }
+                else if(field.equals("defect_url_guest")) {
+                    defect.defect_url_guest=readString(in);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return defect;
+        }
+    }
+
+    static class DefectResultListAdapter extends TypeAdapter<RigorApiDefectResultList> {
+        private final DefectResultAdapter defectAdapter=new DefectResultAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiDefectResultList list) throws IOException {
+            out.beginObject();
+            writeList(out,"defects",list.defects,defectAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiDefectResultList read(JsonReader in) throws IOException {
+            RigorApiDefectResultList list=new RigorApiDefectResultList();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("defects")) {
+                    list.defects=readList(in,defectAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return list;
+        }
+    }
+
+    static class TestResultAdapter extends TypeAdapter<RigorApiTestResult> {
+        private final TagAdapter tagAdapter=new TagAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiTestResult test) throws IOException {
+            out.beginObject();
+            writeInteger(out,"test_id",test.test_id);
+            writeString(out,"name",test.name);
+            writeString(out,"url",test.url);
+            writeList(out,"tags",test.tags,tagAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiTestResult read(JsonReader in) throws IOException {
+            RigorApiTestResult test=new RigorApiTestResult();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("test_id")) {
+                    test.test_id=readInteger(in);
+                }
+                else if(field.equals("name")) {
+                    test.name=readString(in);
+                }
+                else if(field.equals("url")) {
+                    test.url=readString(in);
+                }
+                else if(field.equals("tags")) {
+                    test.tags=readList(in,tagAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return test;
+        }
+    }
+
+    static class TestResultListAdapter extends TypeAdapter<RigorApiTestResultList> {
+        private final TestResultAdapter testAdapter=new TestResultAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiTestResultList list) throws IOException {
+            out.beginObject();
+            writeList(out,"tests",list.tests,testAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiTestResultList read(JsonReader in) throws IOException {
+            RigorApiTestResultList list=new RigorApiTestResultList();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("tests")) {
+                    list.tests=readList(in,testAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return list;
+        }
+    }
+
+    static class SnapshotCreateAdapter extends TypeAdapter<RigorApiSnapshotCreate> {
+        private final TagAdapter tagAdapter=new TagAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiSnapshotCreate payload) throws IOException {
+            out.beginObject();
+            writeList(out,"tags",payload.tags,tagAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiSnapshotCreate read(JsonReader in) throws IOException {
+            RigorApiSnapshotCreate payload=new RigorApiSnapshotCreate();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("tags")) {
+                    payload.tags=readList(in,tagAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return payload;
+        }
+    }
+
+    static class SnapshotUpdateAdapter extends TypeAdapter<RigorApiSnapshotUpdate> {
+        private final TagAdapter tagAdapter=new TagAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiSnapshotUpdate payload) throws IOException {
+            out.beginObject();
+            writeString(out,"tag_update",payload.tag_update);
+            if(payload.snapshot_ids!=null) {
+                out.name("snapshot_ids").beginArray();
+                for(Integer id: payload.snapshot_ids) {
+                    out.value(id);
+                }
+                out.endArray();
+            }
+            writeList(out,"tags",payload.tags,tagAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiSnapshotUpdate read(JsonReader in) throws IOException {
+            RigorApiSnapshotUpdate payload=new RigorApiSnapshotUpdate();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("tag_update")) {
+                    payload.tag_update=readString(in);
+                }
+                else if(field.equals("snapshot_ids")) {
+                    payload.snapshot_ids=readIntegerList(in);
+                }
+                else if(field.equals("tags")) {
+                    payload.tags=readList(in,tagAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return payload;
+        }
+    }
+
+    static class TestUpdateAdapter extends TypeAdapter<RigorApiTestUpdate> {
+        private final TagAdapter tagAdapter=new TagAdapter();
+
+        @Override
+        public void write(JsonWriter out, RigorApiTestUpdate payload) throws IOException {
+            out.beginObject();
+            writeString(out,"tag_update",payload.tag_update);
+            writeList(out,"tags",payload.tags,tagAdapter);
+            out.endObject();
+        }
+
+        @Override
+        public RigorApiTestUpdate read(JsonReader in) throws IOException {
+            RigorApiTestUpdate payload=new RigorApiTestUpdate();
+            in.beginObject();
+            while(in.hasNext()) {
+                String field=in.nextName();
+                if(field.equals("tag_update")) {
+                    payload.tag_update=readString(in);
+                }
+                else if(field.equals("tags")) {
+                    payload.tags=readList(in,tagAdapter);
+                }
+                else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return payload;
+        }
+    }
+
+    //
+    // Field helpers
+    //
+
+    protected static String readString(JsonReader in) throws IOException {
+        if(in.peek()==JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    protected static Integer readInteger(JsonReader in) throws IOException {
+        if(in.peek()==JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    protected static boolean readBoolean(JsonReader in) throws IOException {
+        if(in.peek()==JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        return in.nextBoolean();
+    }
+
+    protected static ArrayList<Integer> readIntegerList(JsonReader in) throws IOException {
+        if(in.peek()==JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ArrayList<Integer> list=new ArrayList<Integer>();
+        in.beginArray();
+        while(in.hasNext()) {
+            list.add(readInteger(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    protected static <T> ArrayList<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if(in.peek()==JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ArrayList<T> list=new ArrayList<T>();
+        in.beginArray();
+        while(in.hasNext()) {
+            if(in.peek()==JsonToken.NULL) {
+                in.nextNull();
+                list.add(null);
+            }
+            else {
+                list.add(adapter.read(in));
+            }
+        }
+        in.endArray();
+        return list;
+    }
+
+    protected static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if(value!=null) {
+            out.name(name).value(value);
+        }
+    }
+
+    protected static void writeInteger(JsonWriter out, String name, Integer value) throws IOException {
+        if(value!=null) {
+            out.name(name).value(value);
+        }
+    }
+
+    protected static <T> void writeList(JsonWriter out, String name, List<T> list, TypeAdapter<T> adapter) throws IOException {
+        if(list==null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for(T item: list) {
+            if(item==null) {
+                out.nullValue();
+            }
+            else {
+                adapter.write(out,item);
+            }
+        }
+        out.endArray();
+    }
+}
@@ -0,0 +1,24 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+//
+// A failed Rigor Optimization API call, noting whether the failure was transient
+// (so the same call may succeed later) or fatal.
+//
+
+public class RigorApiException extends Exception {
+    public RigorApiException(String message, boolean transientFailure) {
+        super(message);
+        this.transientFailure=transientFailure;
+    }
+
+    public boolean isTransient() {
+        return this.transientFailure;
+    }
+
+    // Is t a transient API failure?
+    public static boolean IsTransient(Throwable t) {
+        return (t instanceof RigorApiException) && ((RigorApiException)t).isTransient();
+    }
+
+    private final boolean transientFailure;
+}
@@ -4,12 +4,25 @@ package org.jenkinsci.plugins.rigor.optimization.api;
 // Helper functions that make use of the RigorApiClient
 //
 
-import com.sun.org.apache.xpath.internal.operations.Bool;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
 import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
 
 import java.io.PrintStream;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RigorApiHelper {
     public RigorApiHelper(String apiKey, BuilderSettings settings, PrintStream logger, Integer buildNumber, String projectName) {
@@ -51,11 +64,11 @@ public class RigorApiHelper {
 
     // Verify the existance of the list of test ids passed in.
     protected void checkForBadTestIDs(ArrayList<Integer> testIDs) throws Exception {
-        // Look for bad ids
+        // Look for bad ids, through the shared cache of known tests
+        Map<Integer,RigorApiTestResult> found=RigorTestCache.Get().FindTests(this.apiClient,testIDs);
         ArrayList<Integer> badIDs=new ArrayList<>();
         for (Integer id : testIDs) {
-            RigorApiResponse resp= this.apiClient.TestForValidTestID(id);
-            if(!resp.Success()) {
+            if(!found.containsKey(id)) {
                 badIDs.add(id);
             }
         }
@@ -80,59 +93,197 @@ public class RigorApiHelper {
     // Returns true if build step succeeds, false to fail the build.
     // Assumes input settings are already validated by caller
     public Boolean RunBuildTests() {
-        logger.println("");
-        logger.println("####################################################");
-        logger.println("Testing website performance using Rigor Optimization");
-        logger.println("");
-
         // Kick off the snapshots
         ArrayList<RigorApiSnapshotResult> snapshotsStarted;
-        try { snapshotsStarted=startSnapshots(); }
+        try { snapshotsStarted=StartBuildTests(); }
         catch (Exception e) {
             return passOrFailForSnapshotError();
         }
 
         // Should we wait around?
-        if(!this.settings.InputFailOnResults) {
-            Utils.LogMsg(logger, "Fail based on results disabled, continuing build without waiting for snapshots to complete.");
+        if(!WaitForResults()) {
             return true;
         }
-        if(!this.settings.DoPolling) {
-            Utils.LogMsg(logger, "No metrics were configured for build failure, continuing build without waiting for snapshots to complete.");
-            return true;
+
+        return CollectBuildTests(snapshotsStarted);
+    }
+
+    //
+    // Individual phases of RunBuildTests, for callers that don't block while waiting
+    //
+
+    // Stop StartBuildTests from another thread. No more snapshots are started, and it throws
+    // once the calls already in flight are abandoned.
+    public void StopStarting() {
+        this.stopStarting=true;
+    }
+
+    // Start snapshots for all configured tests
+    public ArrayList<RigorApiSnapshotResult> StartBuildTests() throws Exception {
+        logger.println("");
+        logger.println("####################################################");
+        logger.println("Testing website performance using Rigor Optimization");
+        logger.println("");
+
+        return startSnapshots();
+    }
+
+    // Wait for snapshots started earlier to complete, then pass/fail on their results.
+    // Each snapshot is analyzed and tagged as soon as it finishes, while the rest are still scanning.
+    // Returns true if build step succeeds, false to fail the build.
+    public Boolean CollectBuildTests(ArrayList<RigorApiSnapshotResult> snapshotsStarted) {
+        int numberRemain=snapshotsStarted.size();
+        long timeoutTimeMS = System.currentTimeMillis() + (this.settings.TestTimeoutSecondsParsed * 1000);
+
+        // Hand the snapshots off, collecting each as it finishes
+        final LinkedBlockingQueue<ListenableFuture<RigorApiSnapshotResult>> finished=new LinkedBlockingQueue<ListenableFuture<RigorApiSnapshotResult>>();
+        final ArrayList<ListenableFuture<RigorApiSnapshotResult>> watches=WatchSnapshots(snapshotsStarted);
+        for(final ListenableFuture<RigorApiSnapshotResult> watch: watches) {
+            watch.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    finished.add(watch);
+                }
+            }, RigorApiHttpTransport.Get().getWorkerExecutor());
         }
 
-        // Wait for completion
-        ArrayList<RigorApiSnapshotResult> snapshotsCompleted;
+        // Wait for completion of all snapshots, up to the timeout
+        Utils.LogMsg(logger,"Waiting for completion of " + numberRemain + " snapshot(s), timeout " + this.settings.TestTimeoutSecondsParsed + " seconds");
         try {
-            snapshotsCompleted=waitForSnapshotsComplete(snapshotsStarted);
+            while(numberRemain>0) {
+                ListenableFuture<RigorApiSnapshotResult> watch=finished.poll(Math.max(0,timeoutTimeMS-System.currentTimeMillis()),TimeUnit.MILLISECONDS);
+                if(watch==null) {
+                    // Abort if we hit timeout
+                    RigorMetrics.Get().RecordWaitTimeout();
+                    return SnapshotError("An error occurred waiting for snapshot(s) to complete: Timeout exceeded, aborting.");
+                }
+
+                RigorApiSnapshotResult result;
+                try {
+                    result=watch.get();
+                }
+                catch (ExecutionException e) {
+                    return SnapshotError("An error occurred waiting for snapshot(s) to complete: " + e.getCause().getMessage());
+                }
+                --numberRemain;
+                Utils.LogMsg(logger,"Snapshot " + result.snapshot_id + " for test " + result.test_id + " complete. " + numberRemain + " remaining");
+
+                // Analyze it now rather than once everything is in. Time spent here doesn't
+                // count against the scan timeout.
+                long analysisStartMS=System.currentTimeMillis();
+                boolean passed;
+                try {
+                    passed=AnalyzeSnapshot(result);
+                }
+                catch (Exception e) {
+                    flushSnapshotTags();
+                    Utils.LogMsg(logger,"An error occurred processing snapshot results: " + e.getMessage());
+                    logger.println("");
+                    return passOrFailForSnapshotError();
+                }
+                timeoutTimeMS+=System.currentTimeMillis()-analysisStartMS;
+
+                // The build has failed whatever the rest show, so don't hold it up
+                if(!passed && numberRemain>0 && FailFast()) {
+                    StopWaiting(snapshotsStarted);
+                    return FinishBuildTests();
+                }
+            }
         }
-        catch (Exception e) {
-            Utils.LogMsg(logger,"An error occurred waiting for snapshot(s) to complete: " + e.getMessage());
-            return passOrFailForSnapshotError();
+        catch (InterruptedException e) {
+            // User ininitiated a build stop
+            return SnapshotError("An error occurred waiting for snapshot(s) to complete: Abort signal received, exiting.");
         }
-        if(snapshotsCompleted==null) {
-            Utils.LogMsg(logger,"Timeout occured waiting for snapshots to complete.");
-            return passOrFailForSnapshotError();
+        finally {
+            // Stop watching anything we're no longer waiting for
+            for(ListenableFuture<RigorApiSnapshotResult> watch: watches) {
+                watch.cancel(false);
+            }
         }
 
+        Utils.LogMsg(logger,"All snapshots complete");
+
         // Pass/fail based on settings
-        try {
-            Boolean result=analyzeResults(snapshotsCompleted);
-            logger.println("");
-            return result;
+        return FinishBuildTests();
+    }
+
+    // Do the settings call for waiting on snapshot results? Logs why if not.
+    public boolean WaitForResults() {
+        if(!this.settings.InputFailOnResults) {
+            Utils.LogMsg(logger, "Fail based on results disabled, continuing build without waiting for snapshots to complete.");
+            return false;
         }
-        catch (Exception e) {
-            Utils.LogMsg(logger,"An error occurred processing snapshot results: " + e.getMessage());
-            logger.println("");
-            return passOrFailForSnapshotError();
+        if(!this.settings.DoPolling) {
+            Utils.LogMsg(logger, "No metrics were configured for build failure, continuing build without waiting for snapshots to complete.");
+            return false;
         }
+        return true;
     }
 
-    // Start new snapshots for all configured tests.
+    // Hand started snapshots to the shared watcher. Each future completes when its snapshot
+    // finishes scanning; cancel them to stop waiting.
+    public ArrayList<ListenableFuture<RigorApiSnapshotResult>> WatchSnapshots(List<RigorApiSnapshotResult> snapshotsStarted) {
+        ArrayList<ListenableFuture<RigorApiSnapshotResult>> watches=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
+        for(RigorApiSnapshotResult snapshot: snapshotsStarted) {
+            watches.add(RigorSnapshotWatcher.Get().Watch(this.apiClient,snapshot));
+        }
+        return watches;
+    }
+
+    // Analyze one completed snapshot and tag it with the outcome, returning true if it passed.
+    // Safe to call from completion callbacks, snapshots are analyzed one at a time.
+    public synchronized boolean AnalyzeSnapshot(RigorApiSnapshotResult snapshot) throws Exception {
+        boolean passed=analyzeSnapshot(snapshot,this.analyzedSnapshots.isEmpty());
+        this.analyzedSnapshots.add(snapshotKey(snapshot));
+        if(!passed) {
+            this.allAnalyzedPassed=false;
+        }
+        return passed;
+    }
+
+    // Log the overall verdict for everything analyzed, returning true if build step succeeds
+    public synchronized Boolean FinishBuildTests() {
+        flushSnapshotTags();
+        Boolean result=finishAnalysis(this.allAnalyzedPassed);
+        logger.println("");
+        return result;
+    }
+
+    // Is the build to stop waiting as soon as one snapshot fails?
+    public boolean FailFast() {
+        return Boolean.TRUE.equals(this.settings.FailFast);
+    }
+
+    // After a fail-fast, give up on the snapshots not analyzed yet. They finish scanning on
+    // their own.
+    public void StopWaiting(List<RigorApiSnapshotResult> snapshotsStarted) {
+        ArrayList<RigorApiSnapshotResult> remaining=new ArrayList<RigorApiSnapshotResult>();
+        synchronized (this) {
+            for(RigorApiSnapshotResult snapshot: snapshotsStarted) {
+                if(!this.analyzedSnapshots.contains(snapshotKey(snapshot))) {
+                    remaining.add(snapshot);
+                }
+            }
+        }
+        if(!remaining.isEmpty()) {
+            Utils.LogMsg(logger,"Failing fast, not waiting for " + remaining.size() + " remaining snapshot(s)");
+        }
+    }
+
+    // Log a problem running the snapshots, returning pass/fail per the configured setting
+    public Boolean SnapshotError(String msg) {
+        // Still tag whatever we got through
+        flushSnapshotTags();
+        Utils.LogMsg(logger,msg);
+        return passOrFailForSnapshotError();
+    }
+
+    // Start new snapshots for all configured tests. Snapshot creation and test tagging
+    // fan out in parallel, with at most settings.MaxConcurrentRequests calls in flight.
     protected ArrayList<RigorApiSnapshotResult> startSnapshots() throws Exception {
         Utils.LogMsg(logger,"Creating " + this.settings.PerformanceTestIDs.size() + " new performance snapshot(s)");
-        boolean launchedAll=true;
+        final AtomicBoolean launchedAll=new AtomicBoolean(true);
+        final Semaphore inFlight=new Semaphore(this.settings.MaxConcurrentRequests);
 
         // If we're waiting for a snapshot to complete, don't tag it in Rigor Optimization
         // until it finishes so we can communicate build pass/fail. If we're not waiting, then
@@ -142,220 +293,304 @@ public class RigorApiHelper {
             snapshotStartTag=this.projectAndBuild;
         }
 
+        // Tag each test as a jenkins build test
+        final ArrayList<RigorApiTag> testTags=new ArrayList<RigorApiTag>();
+        RigorApiTag testTag=new RigorApiTag();
+        if(this.projectName!=null) {
+            testTag.name="Jenkins " + this.projectName;
+            testTag.name=Utils.Truncate(testTag.name,RigorApiTag.MaxTagLength);
+        }
+        else {
+            testTag.name="Jenkins Build";
+        }
+        testTag.priority="Low";
+        testTags.add(testTag);
+        final RigorTagState tagState=RigorTagState.Get();
+
         // Create new snapshots for each configured test
-        ArrayList<RigorApiSnapshotResult> results = new ArrayList<RigorApiSnapshotResult>();
+        ArrayList<ListenableFuture<RigorApiSnapshotResult>> started=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
+        ArrayList<ListenableFuture<RigorApiSnapshotResult>> allCalls=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
         ArrayList<Integer> ptiBuffer = new ArrayList<Integer>(this.settings.PerformanceTestIDs);
-        for(Integer testID : ptiBuffer) {
-            Utils.LogMsg(logger,"Creating new snapshot for test " + testID + "...");
-            try {
-                RigorApiSnapshotResult result=this.apiClient.StartSnapshot(testID, snapshotStartTag);
-                results.add(result);
-                Utils.LogMsg(logger,"New snapshot " + result.snapshot_id + " created: " + result.snapshot_url_guest);
-            }
-            catch (Exception e) {
-                launchedAll=false;
-                Utils.LogMsg(logger,"Failed to create snapshot: " + e.getMessage());
-            }
-
-            // Tag this test as a jenkins build test
-            try {
-                ArrayList<RigorApiTag> tags=new ArrayList<RigorApiTag>();
-                RigorApiTag tag=new RigorApiTag();
-
-                if(this.projectName!=null) {
-                    tag.name="Jenkins " + this.projectName;
-                    tag.name=Utils.Truncate(tag.name,RigorApiTag.MaxTagLength);
+        try {
+            for(final Integer testID : ptiBuffer) {
+                inFlight.acquire();
+                if(this.stopStarting) {
+                    inFlight.release();
+                    for(ListenableFuture<RigorApiSnapshotResult> call: allCalls) {
+                        call.cancel(true);
+                    }
+                    throw new Exception("Stopped, no further snapshots started.");
                 }
-                else {
-                    tag.name="Jenkins Build";
+                Utils.LogMsg(logger,"Creating new snapshot for test " + testID + "...");
+                ListenableFuture<RigorApiSnapshotResult> snapshot=this.apiClient.StartSnapshotAsync(testID, snapshotStartTag);
+                Futures.addCallback(snapshot, new FutureCallback<RigorApiSnapshotResult>() {
+                    @Override
+                    public void onSuccess(RigorApiSnapshotResult result) {
+                        inFlight.release();
+                        RigorMetrics.Get().RecordSnapshotStarted();
+                        Utils.LogMsg(logger,"New snapshot " + result.snapshot_id + " created: " + result.snapshot_url_guest);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        inFlight.release();
+                        launchedAll.set(false);
+                        Utils.LogMsg(logger,"Failed to create snapshot: " + t.getMessage());
+                    }
+                }, RigorApiHttpTransport.Get().getWorkerExecutor());
+                started.add(snapshot);
+                allCalls.add(snapshot);
+
+                // Skip tagging tests that already have the tag from an earlier build
+                if(tagState.IsApplied(this.apiClient.getKeyFingerprint(),testID,testTags)) {
+                    continue;
                 }
-                tag.priority="Low";
-                tags.add(tag);
-                this.apiClient.UpdateTestWithTags(testID,tags);
+
+                inFlight.acquire();
+                ListenableFuture<RigorApiSnapshotResult> tagged=this.apiClient.UpdateTestWithTagsAsync(testID,testTags);
+                Futures.addCallback(tagged, new FutureCallback<RigorApiSnapshotResult>() {
+                    @Override
+                    public void onSuccess(RigorApiSnapshotResult result) {
+                        inFlight.release();
+                        tagState.RecordApplied(apiClient.getKeyFingerprint(),testID,testTags);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        inFlight.release();
+                        // Don't fail the build if tagging failed, just march on with a warning
+                        Utils.LogMsg(logger,"Failed to tag test " + testID.toString() + ": " + t.getMessage());
+                    }
+                }, RigorApiHttpTransport.Get().getWorkerExecutor());
+                allCalls.add(tagged);
             }
-            catch(Exception e) {
-                // Don't fail the build if tagging failed, just march on with a warning
-                Utils.LogMsg(logger,"Failed to tag test " + testID.toString() + ": " + e.getMessage());
+
+            // Wait for everything to land
+            Futures.successfulAsList(allCalls).get();
+        }
+        catch (InterruptedException e) {
+            // User ininitiated a build stop
+            for(ListenableFuture<RigorApiSnapshotResult> call: allCalls) {
+                call.cancel(true);
             }
+            throw new Exception("Abort signal received, exiting.");
         }
 
-        if(!launchedAll) {
+        if(!launchedAll.get()) {
             throw new Exception("Failed to launch 1 or more performance tests.");
         }
 
+        // Keep results in configured test order
+        ArrayList<RigorApiSnapshotResult> results = new ArrayList<RigorApiSnapshotResult>();
+        for(ListenableFuture<RigorApiSnapshotResult> snapshot: started) {
+            results.add(snapshot.get());
+        }
+
         Utils.LogMsg(logger,"Done creating snapshots");
         Utils.LogMsg(logger,"");
 
         return results;
     }
 
-    // Polling loop until all started snapshots complete
-    protected ArrayList<RigorApiSnapshotResult> waitForSnapshotsComplete(ArrayList<RigorApiSnapshotResult> snapshotsStarted) throws Exception {
-        ArrayList<RigorApiSnapshotResult> completedSnapshots=new ArrayList<>();
-        int numberRemain=snapshotsStarted.size();
-        long currentTime=System.currentTimeMillis();
-        long timeoutTimeMS = currentTime + (this.settings.TestTimeoutSecondsParsed * 1000);
+    // Check one completed snapshot against the configured limits and tag it with the outcome.
+    // Returns true if it passed.
+    protected boolean analyzeSnapshot(RigorApiSnapshotResult snapshot, boolean first) throws Exception {
+        boolean passed=true;
+        String msg;
+        ArrayList<RigorApiTag> buildTags=new ArrayList<RigorApiTag>();
+
+        // Pretty format it
+        if(first) {
+            Utils.LogMsg(logger,"");
+            Utils.LogMsg(logger,"----------------------");
+            Utils.LogMsg(logger,"Analyzing Test Results");
+            Utils.LogMsg(logger,"----------------------");
+            Utils.LogMsg(logger,"");
+        }
+        else {
+            Utils.LogMsg(logger,"");
+            Utils.LogMsg(logger,"----------------------");
+            Utils.LogMsg(logger,"");
+        }
+        Utils.LogMsg(logger,"Analyzing Test " + snapshot.test_id + ", Snapshot " + snapshot.snapshot_id + ": " + snapshot.snapshot_url_guest);
+        Utils.LogMsg(logger,"");
 
-        // For backing off polling frequency
-        long pollBackoff1=currentTime+120000;    // after 2 minutes
-        long pollBackoff2=currentTime+300000;    // after 5 minutes
-        int sleepTime=10000; // start with 10 seconds between polling loop
+        // If configured, fetch the defects once and check every rule against that
+        RigorDefectSummary defects=null;
+        if(Boolean.TRUE.equals(this.settings.ConsolidatedDefectFetch) && needsDefects(snapshot)) {
+            defects=RigorDefectSummary.Load(new RigorDefectPager(this.apiClient,snapshot.test_id,snapshot.snapshot_id,null),
+                    this.settings.FoundDefectIds);
+            logSeverityCounts(defects);
+        }
 
-        // Poll for completion of all snapshots, up to the timeout
-        Utils.LogMsg(logger,"Waiting for completion of " + numberRemain + " snapshot(s), timeout " + this.settings.TestTimeoutSecondsParsed + " seconds");
-        while( (numberRemain>0) && (currentTime< timeoutTimeMS) )
-        {
-            // Back off polling frequency the longer we wait
-            if(currentTime>pollBackoff2) {
-                sleepTime=30000;    // wait 30 seconds
-            }
-            else if(currentTime>pollBackoff1) {
-                sleepTime=20000;    // wait 20 seconds
+        // Test Performance Score
+        if(this.settings.PerformanceScore!=null) {
+            msg="Performance Score: " + snapshot.zoompf_score + " (limit " + this.settings.PerformanceScore + ")";
+            if(snapshot.zoompf_score<this.settings.PerformanceScore) {
+                msg="** FAILED **: " + msg;
+                passed=false;
+
+                // Tag the failure
+                addBuildFailTag(buildTags,"Score less than " + this.settings.PerformanceScore.toString());
             }
-            try { Thread.sleep(sleepTime); }
-            catch (InterruptedException e) {
-                // User ininitiated a build stop
-                throw new Exception("Abort signal received, exiting.");
+            else {
+                msg="Passed: " + msg;
             }
+            Utils.LogMsg(logger,msg);;
+        }
 
-            // Test each remaining snapshot, removing any completed
-            Utils.LogMsg(logger,"Polling status of " + numberRemain + " remaining snapshot(s)...");
-            for(int i=snapshotsStarted.size()-1;i>=0;--i) {
-                RigorApiSnapshotResult snapshot=snapshotsStarted.get(i);
-                RigorApiSnapshotResult result=this.apiClient.GetSnapshot(snapshot.test_id,snapshot.snapshot_id);
+        // Test Critical defects
+        if(this.settings.CriticalNumber!=null) {
+            msg="Critical Defects: " + snapshot.defect_count_critical_1pc + " (limit " + this.settings.CriticalNumber + ")";
+            if(snapshot.defect_count_critical_1pc>this.settings.CriticalNumber) {
+                msg="** FAILED **: " + msg;
+                Utils.LogMsg(logger,msg);
+                passed=false;
 
-                // Did the scan finish?
-                if(result.IsFailedScan()) {
-                    // Yes, but it failed
-                    throw new Exception("Test " + snapshot.test_id + ", snapshot " + snapshot.snapshot_id + " failed scanning.");
-                }
-                else if(result.IsScanComplete()) {
-                    // Yes, and it succeeded. Remove from polling list
-                    completedSnapshots.add(result);
-                    snapshotsStarted.remove(i);
-                    --numberRemain;
+                // Tag the failure
+                addBuildFailTag(buildTags,"Critical defects more than " + this.settings.CriticalNumber.toString());
 
-                    Utils.LogMsg(logger,"Snapshot " + snapshot.snapshot_id + " for test " + snapshot.test_id + " complete. " + numberRemain + " remaining");
-                }
-                // else, still waiting...
+                // Add extra detail about what failed
+                logCriticalDefects(snapshot,defects);
+                Utils.LogMsg(logger,"...Reminder: you can mute or change severity of these defects for future builds using the defect links above (must be logged in)");
+            }
+            else {
+                msg="Passed: " + msg;
+                Utils.LogMsg(logger,msg);;
             }
-
-            currentTime=System.currentTimeMillis();
         }
 
-        // Abort if we hit timeout
-        if(numberRemain>0) {
-            throw new Exception("Timeout exceeded, aborting.");
+        // Test specific defects
+        if(this.settings.FoundDefectIds.size()>0) {
+            if(!analyzeFoundDefects(snapshot, buildTags, defects)) {
+                passed=false;
+            }
         }
 
-        Utils.LogMsg(logger,"All snapshots complete");
+        // Tag the snapshot with more details
+        if(buildTags.size()>0) {
+            // Build failure
+            Utils.LogMsg(logger, "Tagging defect failures");
+
+            // Add an overall failure tag too
+            RigorApiTag failTag=new RigorApiTag();
+            failTag.name=this.projectAndBuild + " build failed";
+            failTag.priority="High";
+            buildTags.add(0,failTag);   // set first
+            queueSnapshotTags(snapshot,buildTags);
+        }
+        else {
+            // Build success
+            RigorApiTag passTag=new RigorApiTag();
+            passTag.name=this.projectAndBuild + " build passed";
+            passTag.priority="Low";
+            buildTags.add(passTag);
+            queueSnapshotTags(snapshot,buildTags);
+        }
 
-        return completedSnapshots;
+        return passed;
     }
 
-    // Snapshots have completed, now analyze their results to see if we should fail the build
-    // Returns true if all passed, false if at least one failure
-    protected boolean analyzeResults(ArrayList<RigorApiSnapshotResult> snapshotsCompleted) throws Exception {
-        boolean allPassed=true;
-        String msg;
-
-        Utils.LogMsg(logger,"");
-        Utils.LogMsg(logger,"----------------------");
-        Utils.LogMsg(logger,"Analyzing Test Results");
-        Utils.LogMsg(logger,"----------------------");
+    // Log the overall verdict once every snapshot has been analyzed
+    protected boolean finishAnalysis(boolean allPassed) {
+        // Peace out
         Utils.LogMsg(logger,"");
+        if(allPassed) {
+            Utils.LogMsg(logger, "All tests passed!");
+            return true;
+        }
+        else {
+            Utils.LogMsg(logger, "One or more tests failed.");
+            return false;
+        }
+    }
 
-        // Look through each result
-        boolean firstLoop=true;
-        for(RigorApiSnapshotResult snapshot: snapshotsCompleted) {
-            ArrayList<RigorApiTag> buildTags=new ArrayList<RigorApiTag>();
+    // Hold a snapshot's result tags until the end of analysis, so snapshots of the same test
+    // with the same outcome can be tagged in one call
+    protected synchronized void queueSnapshotTags(RigorApiSnapshotResult snapshot, ArrayList<RigorApiTag> tags) {
+        StringBuilder key=new StringBuilder().append(snapshot.test_id);
+        for(RigorApiTag tag: tags) {
+            key.append('\n').append(tag.name).append('|').append(tag.priority);
+        }
 
-            // Pretty format it
-            if(!firstLoop) {
-                Utils.LogMsg(logger,"");
-                Utils.LogMsg(logger,"----------------------");
-                Utils.LogMsg(logger,"");
-            }
-            firstLoop=false;
-            Utils.LogMsg(logger,"Analyzing Test " + snapshot.test_id + ", Snapshot " + snapshot.snapshot_id + ": " + snapshot.snapshot_url_guest);
-            Utils.LogMsg(logger,"");
+        PendingTags pending=this.pendingTags.get(key.toString());
+        if(pending==null) {
+            pending=new PendingTags(snapshot.test_id,tags);
+            this.pendingTags.put(key.toString(),pending);
+        }
+        pending.snapshotIDs.add(snapshot.snapshot_id);
+    }
 
-            // Test Performance Score
-            if(this.settings.PerformanceScore!=null) {
-                msg="Performance Score: " + snapshot.zoompf_score + " (limit " + this.settings.PerformanceScore + ")";
-                if(snapshot.zoompf_score<this.settings.PerformanceScore) {
-                    msg="** FAILED **: " + msg;
-                    allPassed=false;
+    // Send all queued snapshot tags, one call per test and tag set. Tagging is informational,
+    // so failures are logged rather than failing the build, and tags not sent within a poll
+    // cycle are given up on rather than holding up the build.
+    protected void flushSnapshotTags() {
+        ArrayList<PendingTags> batches;
+        synchronized (this) {
+            batches=new ArrayList<PendingTags>(this.pendingTags.values());
+            this.pendingTags.clear();
+        }
+        if(batches.isEmpty()) {
+            return;
+        }
 
-                    // Tag the failure
-                    addBuildFailTag(buildTags,"Score less than " + this.settings.PerformanceScore.toString());
-                }
-                else {
-                    msg="Passed: " + msg;
-                }
-                Utils.LogMsg(logger,msg);;
+        ArrayList<ListenableFuture<RigorApiSnapshotResult>> updates=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
+        for(PendingTags batch: batches) {
+            updates.add(this.apiClient.UpdateSnapshotsWithTagsAsync(batch.testID,batch.snapshotIDs,batch.tags));
+        }
+        try {
+            Futures.successfulAsList(updates).get(RigorSnapshotPoller.PollCycleTimeoutMS,TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+            // Timed out, the unfinished updates are reported below
+        }
+        for(int i=0;i<batches.size();++i) {
+            PendingTags batch=batches.get(i);
+            ListenableFuture<RigorApiSnapshotResult> update=updates.get(i);
+            if(!update.isDone()) {
+                update.cancel(true);
+                Utils.LogMsg(logger,"Gave up tagging snapshot(s) " + Utils.ToCSV(batch.snapshotIDs) + " for test " + batch.testID
+                        + ", tags not applied: " + tagNames(batch.tags));
+                continue;
             }
-
-            // Test Critical defects
-            if(this.settings.CriticalNumber!=null) {
-                msg="Critical Defects: " + snapshot.defect_count_critical_1pc + " (limit " + this.settings.CriticalNumber + ")";
-                if(snapshot.defect_count_critical_1pc>this.settings.CriticalNumber) {
-                    msg="** FAILED **: " + msg;
-                    Utils.LogMsg(logger,msg);
-                    allPassed=false;
-
-                    // Tag the failure
-                    addBuildFailTag(buildTags,"Critical defects more than " + this.settings.CriticalNumber.toString());
-
-                    // Add extra detail about what failed
-                    logCriticalDefects(snapshot);
-                    Utils.LogMsg(logger,"...Reminder: you can mute or change severity of these defects for future builds using the defect links above (must be logged in)");
-                }
-                else {
-                    msg="Passed: " + msg;
-                    Utils.LogMsg(logger,msg);;
-                }
+            try {
+                RigorApiClient.await(update);
             }
-
-            // Test specific defects
-            if(this.settings.FoundDefectIds.size()>0) {
-                if(!analyzeFoundDefects(snapshot, buildTags)) {
-                    allPassed=false;
-                }
+            catch (Exception e) {
+                Utils.LogMsg(logger,"Failed to tag snapshot(s) " + Utils.ToCSV(batch.snapshotIDs) + ": " + e.getMessage());
             }
+        }
+    }
 
-            // Tag the snapshot with more details
-            if(buildTags.size()>0) {
-                // Build failure
-                Utils.LogMsg(logger, "Tagging defect failures");
-
-                // Add an overall failure tag too
-                RigorApiTag failTag=new RigorApiTag();
-                failTag.name=this.projectAndBuild + " build failed";
-                failTag.priority="High";
-                buildTags.add(0,failTag);   // set first
-                this.apiClient.UpdateSnapshotWithTags(snapshot.test_id,snapshot.snapshot_id,buildTags);
-            }
-            else {
-                // Build success
-                RigorApiTag passTag=new RigorApiTag();
-                passTag.name=this.projectAndBuild + " build passed";
-                passTag.priority="Low";
-                buildTags.add(passTag);
-                this.apiClient.UpdateSnapshotWithTags(snapshot.test_id,snapshot.snapshot_id,buildTags);
+    protected static String tagNames(List<RigorApiTag> tags) {
+        StringBuilder names=new StringBuilder();
+        for(RigorApiTag tag: tags) {
+            if(names.length()>0) {
+                names.append(", ");
             }
+            names.append(tag.name);
         }
+        return names.toString();
+    }
 
-        // Peace out
-        Utils.LogMsg(logger,"");
-        if(allPassed) {
-            Utils.LogMsg(logger, "All tests passed!");
-            return true;
-        }
-        else {
-            Utils.LogMsg(logger, "One or more tests failed.");
-            return false;
+    // Snapshots of one test waiting for the same tags
+    protected static class PendingTags {
+        PendingTags(Integer testID, ArrayList<RigorApiTag> tags) {
+            this.testID=testID;
+            this.tags=tags;
         }
+
+        final Integer testID;
+        final ArrayList<RigorApiTag> tags;
+        final ArrayList<Integer> snapshotIDs=new ArrayList<Integer>();
+    }
+
+    // Identifies a snapshot across tests
+    protected static String snapshotKey(RigorApiSnapshotResult snapshot) {
+        return snapshot.test_id + ":" + snapshot.snapshot_id;
     }
 
     protected void addBuildFailTag(ArrayList<RigorApiTag> buildFailTags, String msg) {
@@ -369,14 +604,46 @@ public class RigorApiHelper {
         buildFailTags.add(failTag);
     }
 
-    // Provide links and detail about the found critical defects
-    protected void logCriticalDefects(RigorApiSnapshotResult snapshot) {
+    // Will analysis need the snapshot's defect details?
+    protected boolean needsDefects(RigorApiSnapshotResult snapshot) {
+        if(this.settings.FoundDefectIds.size()>0) {
+            return true;
+        }
+        return this.settings.CriticalNumber!=null && snapshot.defect_count_critical_1pc>this.settings.CriticalNumber;
+    }
+
+    // Provide links and detail about the found critical defects, from the summary if we have one
+    // One line breaking the snapshot's defects down by severity
+    protected void logSeverityCounts(RigorDefectSummary defects) {
+        StringBuilder msg=new StringBuilder();
+        for(Map.Entry<String,Integer> entry: defects.SeverityCounts().entrySet()) {
+            msg.append(msg.length()>0 ? ", " : "").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        Utils.LogMsg(logger,"Defects by severity: " + (msg.length()>0 ? msg.toString() : "none"));
+    }
+
+    protected void logCriticalDefects(RigorApiSnapshotResult snapshot, RigorDefectSummary defects) {
         try {
-            RigorApiDefectResultList criticalDefects=this.apiClient.GetCriticalDefects(snapshot.test_id,snapshot.snapshot_id);
             int count=0;
-            for(RigorApiDefectResult defect: criticalDefects.defects) {
-                ++count;
-                logDefect(count, defect);
+            if(defects!=null) {
+                for(RigorApiDefectResult defect: defects.CriticalDefects()) {
+                    ++count;
+                    logDefect(count, defect);
+                }
+                return;
+            }
+
+            // Stream every page of them
+            RigorDefectPager pager=new RigorDefectPager(this.apiClient,snapshot.test_id,snapshot.snapshot_id,
+                    "f.severity=" + RigorDefectSummary.CriticalSeverity);
+            try {
+                for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) {
+                    ++count;
+                    logDefect(count, defect);
+                }
+            }
+            finally {
+                pager.Close();
             }
         }
         catch (Exception e) {
@@ -386,20 +653,38 @@ public class RigorApiHelper {
     }
 
     // Look for specific defects in the results, returning true if none are found (e.g. all passed).
-    protected boolean analyzeFoundDefects(RigorApiSnapshotResult snapshot, ArrayList<RigorApiTag> buildFailTags)
+    // Checked against the defect summary if we have one, otherwise asks the API.
+    protected boolean analyzeFoundDefects(RigorApiSnapshotResult snapshot, ArrayList<RigorApiTag> buildFailTags,
+                                          RigorDefectSummary defects)
             throws Exception {
 
         // Look for these specific defects in the results
-        RigorApiDefectResultList defectList=this.apiClient.GetSpecificDefects(snapshot.test_id,snapshot.snapshot_id,this.settings.FoundDefectIds);
-        if(defectList.defects.size()==0) {
+        ArrayList<RigorApiDefectResult> found;
+        if(defects!=null) {
+            found=defects.Matching(this.settings.FoundDefectIds);
+        }
+        else {
+            found=new ArrayList<RigorApiDefectResult>();
+            RigorDefectPager pager=new RigorDefectPager(this.apiClient,snapshot.test_id,snapshot.snapshot_id,
+                    "f.defect_ids=" + URLEncoder.encode(Utils.ToCSV(this.settings.FoundDefectIds),"UTF-8"));
+            try {
+                for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) {
+                    found.add(defect);
+                }
+            }
+            finally {
+                pager.Close();
+            }
+        }
+        if(found.isEmpty()) {
             Utils.LogMsg(logger,"Passed: No defects in found defect fail list were discovered");
             return true;
         }
 
         // Uh-oh, we found something. Log what we found
-        Utils.LogMsg(logger,"** FAILED **: " + defectList.defects.size() + " defect(s) in your defect fail list were found:");
+        Utils.LogMsg(logger,"** FAILED **: " + found.size() + " defect(s) in your defect fail list were found:");
         int count=0;
-        for(RigorApiDefectResult defect: defectList.defects) {
+        for(RigorApiDefectResult defect: found) {
             ++count;
             logDefect(count, defect);
         }
@@ -443,4 +728,12 @@ public class RigorApiHelper {
     protected Integer buildNumber;
     protected String projectName;
     protected String projectAndBuild;
+    protected volatile boolean stopStarting=false;
+
+    // Progress of the snapshots analyzed so far
+    protected Set<String> analyzedSnapshots=new HashSet<String>();
+    protected boolean allAnalyzedPassed=true;
+
+    // Snapshot tags waiting to be sent, by test and tag set
+    protected Map<String,PendingTags> pendingTags=new LinkedHashMap<String,PendingTags>();
 }
@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+// Plugin-wide HTTP transport shared by every RigorApiClient. A single pooled, keep-alive
+// client means concurrent builds reuse open TCP connections (and their TLS sessions)
+// instead of paying a fresh DNS + handshake on every API call.
+//
+// Requests run on a non-blocking I/O reactor, so in-flight calls don't each hold a thread.
+// Responses are handed off to a small worker pool for reading and decoding.
+//
+// Everything is closed when Jenkins shuts down, and started afresh on next use.
+//
+
+public class RigorApiHttpTransport {
+    // Pool sizing. Every call goes to the same API host, so the per-route limit is what matters
+    public static final int MaxConnectionsTotal=50;
+    public static final int MaxConnectionsPerRoute=20;
+
+    // Connections idle longer than this are closed by the evictor, and no connection
+    // is kept alive longer than the time-to-live
+    public static final int IdleConnectionSeconds=30;
+    public static final int ConnectionTimeToLiveSeconds=300;
+
+    // Request timeouts (ms)
+    public static final int ConnectTimeoutMS=15000;
+    public static final int SocketTimeoutMS=60000;
+    public static final int PoolWaitTimeoutMS=30000;
+
+    // Threads: I/O dispatchers for the reactor, workers for response handling
+    public static final int IoThreads=2;
+    public static final int WorkerThreads=4;
+
+    private static RigorApiHttpTransport instance=null;
+
+    // Get the shared transport, creating it on first use
+    public static synchronized RigorApiHttpTransport Get() {
+        if(instance==null) {
+            instance=new RigorApiHttpTransport();
+        }
+        return instance;
+    }
+
+    // Close the shared transport, so its client, I/O reactor and worker threads don't outlive
+    // Jenkins (or a reload of the plugin). Waits for the snapshot watcher to stop polling first.
+    // A later Get() starts a new one.
+    @Terminator(requires=RigorSnapshotWatcher.StoppedMilestone)
+    public static synchronized void Shutdown() {
+        if(instance!=null) {
+            instance.close();
+            instance=null;
+        }
+    }
+
+    private RigorApiHttpTransport() {
+        IOReactorConfig ioConfig=IOReactorConfig.custom()
+                .setIoThreadCount(IoThreads)
+                .setConnectTimeout(ConnectTimeoutMS)
+                .setSoTimeout(SocketTimeoutMS)
+                .setSoKeepAlive(true)
+                .build();
+        // The default schemes, connection factory and resolvers (null), plus a time-to-live so
+        // long-lived connections are replaced and pick up DNS changes to the API host
+        try {
+            this.connectionManager=new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioConfig),
+                    null,
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                            .register("http", NoopIOSessionStrategy.INSTANCE)
+                            .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                            .build(),
+                    null, null, ConnectionTimeToLiveSeconds, TimeUnit.SECONDS);
+        }
+        catch (IOReactorException e) {
+            throw new IllegalStateException("Unable to start Rigor API I/O reactor: " + e.getMessage(), e);
+        }
+        this.connectionManager.setMaxTotal(MaxConnectionsTotal);
+        this.connectionManager.setDefaultMaxPerRoute(MaxConnectionsPerRoute);
+
+        RequestConfig requestConfig=RequestConfig.custom()
+                .setConnectTimeout(ConnectTimeoutMS)
+                .setSocketTimeout(SocketTimeoutMS)
+                .setConnectionRequestTimeout(PoolWaitTimeoutMS)
+                .build();
+
+        // One client for the life of the controller. The default SSL strategy registered above
+        // shares a single SSLContext, so resumed TLS sessions are reused when a pooled connection is replaced.
+        this.client=HttpAsyncClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent("Jenkins Rigor Optimization Plugin")
+                .build();
+        this.client.start();
+
+        this.workerExecutor=MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(WorkerThreads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "Rigor API worker")));
+
+        // Periodically drop expired and idle connections so the pool doesn't hold dead sockets
+        this.evictor=Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(IdleConnectionSeconds, TimeUnit.SECONDS);
+            }
+        }, IdleConnectionSeconds, IdleConnectionSeconds, TimeUnit.SECONDS);
+    }
+
+    public CloseableHttpAsyncClient getClient() {
+        return this.client;
+    }
+
+    // Pool for reading/decoding responses and running callbacks, off the I/O dispatch threads
+    public ListeningExecutorService getWorkerExecutor() {
+        return this.workerExecutor;
+    }
+
+    // Current pool usage, for the management page
+    public PoolStats getPoolStats() {
+        return this.connectionManager.getTotalStats();
+    }
+
+    // Stop the evictor and workers, and close the client along with its pooled connections
+    protected void close() {
+        this.evictor.cancel(false);
+        try {
+            this.client.close();
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING,"Failed to close the Rigor API HTTP client",e);
+        }
+        this.workerExecutor.shutdownNow();
+    }
+
+    private static final Logger LOGGER=Logger.getLogger(RigorApiHttpTransport.class.getName());
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final ListeningExecutorService workerExecutor;
+    private final ScheduledFuture<?> evictor;
+}
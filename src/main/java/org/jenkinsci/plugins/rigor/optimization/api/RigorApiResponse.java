@@ -6,14 +6,22 @@ package org.jenkinsci.plugins.rigor.optimization.api;
 public class RigorApiResponse {
     public int HttpStatusCode =0;
     public String HttpStatusMessage="";
-    public String ResponseBody="";
+    public String ResponseBody="";          // raw body, only kept when debug logging is on
+    public Object Result=null;              // decoded body of a successful response
+    public String DecodeError=null;         // set if a successful body couldn't be decoded
     public RigorApiError RigorError=null;
+    public Exception TransportError=null;   // set if no HTTP response was received at all
+    public Long RetryAfterMS=null;          // server's Retry-After advice, if any
 
     public boolean Success() {
         return (this.HttpStatusCode ==200);
     }
 
     public String FormatError() {
+        if(this.TransportError!=null) {
+            String reason=this.TransportError.getMessage();
+            return "Request failed: " + (reason!=null ? reason : this.TransportError.getClass().getSimpleName());
+        }
         String msg="Server returned " + this.HttpStatusCode;
         if(this.HttpStatusMessage.length()>0) {
             msg+=" (" + this.HttpStatusMessage + ")";
@@ -1,8 +1,11 @@
 package org.jenkinsci.plugins.rigor.optimization.api;
 
+import java.io.Serializable;
 
 // Partial response from the Create Snapshot API call
-public class RigorApiSnapshotResult {
+public class RigorApiSnapshotResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public Integer test_id;
     public Integer snapshot_id;
     public String status;
@@ -10,6 +13,9 @@ public class RigorApiSnapshotResult {
     public Integer zoompf_score;
     public Integer defect_count_critical_1pc;
 
+    // When we saw the snapshot created, null if we didn't start it. Set locally, not sent by the API
+    public Long StartedTimeMS;
+
     // Are we still scanning?
     public boolean IsScanComplete() {
         if(status.equals("InQueue") || status.equals("ScanRunning") ) {
@@ -0,0 +1,8 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+
+// Partial response from the Get Snapshots (list) API call
+public class RigorApiSnapshotResultList {
+    public ArrayList<RigorApiSnapshotResult> snapshots;
+}
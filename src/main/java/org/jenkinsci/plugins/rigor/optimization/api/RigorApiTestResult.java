@@ -0,0 +1,11 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+
+// Partial response from the Get Test API call, also the entries of the Get Tests list
+public class RigorApiTestResult {
+    public Integer test_id;
+    public String name;
+    public String url;
+    public ArrayList<RigorApiTag> tags;
+}
@@ -0,0 +1,8 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+
+// Partial response from the Get Tests (list) API call
+public class RigorApiTestResultList {
+    public ArrayList<RigorApiTestResult> tests;
+}
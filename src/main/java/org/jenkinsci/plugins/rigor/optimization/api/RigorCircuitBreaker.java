@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//
+// Controller-wide circuit breaker per API endpoint and key. When the Rigor API keeps failing,
+// requests are refused immediately instead of every build piling on and waiting out its
+// timeout; builds then pass or fail straight away per their "fail on test error" setting.
+//
+// Closed:    requests flow. Consecutive failures past the threshold open the circuit.
+// Open:      requests are refused until the open period ends.
+// Half-open: a single trial request goes through. Success closes the circuit, failure reopens it.
+//
+// Only failures that point at the service (network errors and 5xx after retries) count. A 429
+// is the service asking this key to slow down, not failing, so it counts as neither success
+// nor failure.
+//
+
+public class RigorCircuitBreaker {
+    // Consecutive failures that open the circuit
+    public static final int FailureThreshold=5;
+
+    // How long the circuit stays open before a trial request is allowed
+    public static final int OpenDurationMS=30000;
+
+    // A trial request that never reports back is given up on after this long
+    public static final int TrialTimeoutMS=120000;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static RigorCircuitBreaker instance=null;
+
+    public static synchronized RigorCircuitBreaker Get() {
+        if(instance==null) {
+            instance=new RigorCircuitBreaker();
+        }
+        return instance;
+    }
+
+    protected RigorCircuitBreaker() {
+    }
+
+    // May a request go to this endpoint with this key? When half-open, the caller that gets
+    // true is the trial and must report its outcome.
+    public synchronized boolean AllowRequest(String endpoint, String keyFingerprint) {
+        Circuit circuit=getCircuit(endpoint,keyFingerprint);
+        long now=System.currentTimeMillis();
+        switch(circuit.state) {
+            case OPEN:
+                if(now<circuit.openUntil) {
+                    ++circuit.rejected;
+                    return false;
+                }
+                circuit.state=State.HALF_OPEN;
+                circuit.trialStarted=now;
+                return true;
+            case HALF_OPEN:
+                if(now-circuit.trialStarted<TrialTimeoutMS) {
+                    ++circuit.rejected;
+                    return false;
+                }
+                circuit.trialStarted=now;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    // The service answered, close the circuit
+    public synchronized void RecordSuccess(String endpoint, String keyFingerprint) {
+        Circuit circuit=getCircuit(endpoint,keyFingerprint);
+        circuit.state=State.CLOSED;
+        circuit.consecutiveFailures=0;
+    }
+
+    // The service failed us, opening the circuit if that's one too many
+    public synchronized void RecordFailure(String endpoint, String keyFingerprint) {
+        Circuit circuit=getCircuit(endpoint,keyFingerprint);
+
+        // Stragglers sent before it opened don't extend the open period
+        if(circuit.state==State.OPEN) {
+            return;
+        }
+        ++circuit.consecutiveFailures;
+        if(circuit.state==State.HALF_OPEN || circuit.consecutiveFailures>=FailureThreshold) {
+            circuit.state=State.OPEN;
+            circuit.openUntil=System.currentTimeMillis()+OpenDurationMS;
+            ++circuit.timesOpened;
+        }
+    }
+
+    // The request says nothing either way about the service (throttled, or given up on by the
+    // caller). A half-open trial is released so the next request can be the trial.
+    public synchronized void RecordInconclusive(String endpoint, String keyFingerprint) {
+        Circuit circuit=getCircuit(endpoint,keyFingerprint);
+        if(circuit.state==State.HALF_OPEN) {
+            circuit.trialStarted=0;
+        }
+    }
+
+    public synchronized State getState(String endpoint, String keyFingerprint) {
+        return getCircuit(endpoint,keyFingerprint).state;
+    }
+
+    // State of every circuit, for the management page
+    public synchronized List<CircuitStats> getStats() {
+        ArrayList<CircuitStats> stats=new ArrayList<CircuitStats>();
+        long now=System.currentTimeMillis();
+        for(Circuit circuit: this.circuits.values()) {
+            long openForMS=circuit.state==State.OPEN ? Math.max(0,circuit.openUntil-now) : 0;
+            stats.add(new CircuitStats(circuit.endpoint,circuit.keyFingerprint,circuit.state,
+                    circuit.consecutiveFailures,circuit.timesOpened,circuit.rejected,openForMS));
+        }
+        return stats;
+    }
+
+    protected Circuit getCircuit(String endpoint, String keyFingerprint) {
+        String key=endpoint + "|" + keyFingerprint;
+        Circuit circuit=this.circuits.get(key);
+        if(circuit==null) {
+            circuit=new Circuit(endpoint,keyFingerprint);
+            this.circuits.put(key,circuit);
+        }
+        return circuit;
+    }
+
+    // Snapshot of one circuit's state
+    public static class CircuitStats {
+        CircuitStats(String endpoint, String key, State state, int consecutiveFailures, long timesOpened,
+                     long rejected, long openForMS) {
+            this.endpoint=endpoint;
+            this.key=key;
+            this.state=state;
+            this.consecutiveFailures=consecutiveFailures;
+            this.timesOpened=timesOpened;
+            this.rejected=rejected;
+            this.openForMS=openForMS;
+        }
+
+        public String getEndpoint() { return endpoint; }
+        public String getKey() { return key; }
+        public State getState() { return state; }
+        public int getConsecutiveFailures() { return consecutiveFailures; }
+        public long getTimesOpened() { return timesOpened; }
+        public long getRejected() { return rejected; }
+        public long getOpenForMS() { return openForMS; }
+
+        private final String endpoint;
+        private final String key;
+        private final State state;
+        private final int consecutiveFailures;
+        private final long timesOpened;
+        private final long rejected;
+        private final long openForMS;
+    }
+
+    protected static class Circuit {
+        Circuit(String endpoint, String keyFingerprint) {
+            this.endpoint=endpoint;
+            this.keyFingerprint=keyFingerprint;
+        }
+
+        final String endpoint;
+        final String keyFingerprint;
+        State state=State.CLOSED;
+        int consecutiveFailures=0;
+        long openUntil=0;
+        long trialStarted=0;
+        long timesOpened=0;
+        long rejected=0;
+    }
+
+    protected final Map<String,Circuit> circuits=new LinkedHashMap<String,Circuit>();
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//
+// Streams a snapshot's defect listing one defect at a time, across as many pages as it takes.
+// While the caller works through one page the next is already being fetched, and no more than
+// those two pages are held at once, so memory stays bounded however many defects there are.
+//
+//     RigorDefectPager pager=new RigorDefectPager(client,testID,snapshotID,"f.severity=Critical");
+//     try {
+//         for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) { ... }
+//     }
+//     finally {
+//         pager.Close();
+//     }
+//
+
+public class RigorDefectPager {
+    public static final int PageSize=100;
+
+    // Safety stop, in case the API keeps returning full pages
+    public static final int MaxPages=1000;
+
+    // filter is extra query parameters for the listing (e.g. "f.severity=Critical"), or null
+    public RigorDefectPager(RigorApiClient client, Integer testID, Integer snapshotID, String filter) {
+        this.client=client;
+        this.testID=testID;
+        this.snapshotID=snapshotID;
+        this.filter=filter;
+        this.nextPage=fetch(1);
+    }
+
+    // The next defect, or null when there are no more
+    public RigorApiDefectResult Next() throws Exception {
+        while(this.index>=this.current.size()) {
+            if(this.nextPage==null) {
+                return null;
+            }
+
+            // Move on to the page that's been loading, and start on the one after
+            RigorApiDefectResultList list=RigorApiClient.await(this.nextPage);
+            this.current=(list==null || list.defects==null) ? new ArrayList<RigorApiDefectResult>() : list.defects;
+            this.index=0;
+            this.nextPage=(this.current.size()>=PageSize && this.page<MaxPages) ? fetch(this.page+1) : null;
+        }
+        return this.current.get(this.index++);
+    }
+
+    // Stop early, abandoning any page still being fetched
+    public void Close() {
+        if(this.nextPage!=null) {
+            this.nextPage.cancel(false);
+            this.nextPage=null;
+        }
+        this.current=new ArrayList<RigorApiDefectResult>();
+        this.index=0;
+    }
+
+    protected ListenableFuture<RigorApiDefectResultList> fetch(int page) {
+        this.page=page;
+        return this.client.GetDefectsPageAsync(this.testID,this.snapshotID,this.filter,page,PageSize);
+    }
+
+    protected final RigorApiClient client;
+    protected final Integer testID;
+    protected final Integer snapshotID;
+    protected final String filter;
+
+    protected List<RigorApiDefectResult> current=new ArrayList<RigorApiDefectResult>();
+    protected int index=0;
+    protected int page=0;
+    protected ListenableFuture<RigorApiDefectResultList> nextPage;
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//
+// Compact view of every defect found in a snapshot, built from one pass over the defect listing
+// so all the configured rules can be checked locally. Holds a bitset of defect IDs and a count per
+// severity; full details are only kept for the defects we'll log (critical ones, and any on the
+// found-defect fail list). The critical count the build is judged on comes from the snapshot.
+//
+
+public class RigorDefectSummary {
+    public static final String CriticalSeverity="Critical";
+
+    // Start an empty summary that will keep details of critical defects and of interestingIDs
+    public RigorDefectSummary(List<Integer> interestingIDs) {
+        for(Integer id: interestingIDs) {
+            if(id!=null && id>=0) {
+                this.interesting.set(id);
+            }
+        }
+    }
+
+    // Summarize a whole listing, streamed a defect at a time
+    public static RigorDefectSummary Load(RigorDefectPager pager, List<Integer> interestingIDs) throws Exception {
+        RigorDefectSummary summary=new RigorDefectSummary(interestingIDs);
+        try {
+            for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) {
+                summary.Add(defect);
+            }
+        }
+        finally {
+            pager.Close();
+        }
+        return summary;
+    }
+
+    public void Add(RigorApiDefectResult defect) {
+        if(defect.defect_id==null || defect.defect_id<0) {
+            return;
+        }
+        this.defectIDs.set(defect.defect_id);
+
+        // Severities are counted whatever their case ("Critical", "critical")
+        String severity=(defect.severity!=null) ? defect.severity : "Unknown";
+        String key=severity.toLowerCase(Locale.ENGLISH);
+        Integer count=this.severityCounts.get(key);
+        this.severityCounts.put(key,count==null ? 1 : count+1);
+        if(count==null) {
+            this.severityNames.put(key,severity);
+        }
+
+        if(CriticalSeverity.equalsIgnoreCase(defect.severity) || this.interesting.get(defect.defect_id)) {
+            this.details.add(defect);
+        }
+    }
+
+    public boolean Contains(Integer defectID) {
+        return defectID!=null && defectID>=0 && this.defectIDs.get(defectID);
+    }
+
+    // Number of defects of a severity, ignoring case
+    public int CountBySeverity(String severity) {
+        Integer count=(severity!=null) ? this.severityCounts.get(severity.toLowerCase(Locale.ENGLISH)) : null;
+        return count==null ? 0 : count;
+    }
+
+    // Defect count per severity, named as first seen in the listing and in listing order
+    public Map<String,Integer> SeverityCounts() {
+        Map<String,Integer> counts=new LinkedHashMap<String,Integer>();
+        for(Map.Entry<String,Integer> entry: this.severityCounts.entrySet()) {
+            counts.put(this.severityNames.get(entry.getKey()),entry.getValue());
+        }
+        return counts;
+    }
+
+    // Details of the critical defects, in listing order
+    public ArrayList<RigorApiDefectResult> CriticalDefects() {
+        ArrayList<RigorApiDefectResult> critical=new ArrayList<RigorApiDefectResult>();
+        for(RigorApiDefectResult defect: this.details) {
+            if(CriticalSeverity.equalsIgnoreCase(defect.severity)) {
+                critical.add(defect);
+            }
+        }
+        return critical;
+    }
+
+    // Details of the found defects among defectIDs, in listing order
+    public ArrayList<RigorApiDefectResult> Matching(List<Integer> defectIDs) {
+        BitSet wanted=new BitSet();
+        for(Integer id: defectIDs) {
+            if(Contains(id)) {
+                wanted.set(id);
+            }
+        }
+        ArrayList<RigorApiDefectResult> matching=new ArrayList<RigorApiDefectResult>();
+        for(RigorApiDefectResult defect: this.details) {
+            if(wanted.get(defect.defect_id)) {
+                matching.add(defect);
+            }
+        }
+        return matching;
+    }
+
+    private final BitSet interesting=new BitSet();
+    private final BitSet defectIDs=new BitSet();
+    private final Map<String,Integer> severityCounts=new LinkedHashMap<String,Integer>();     // by lower-case severity
+    private final Map<String,String> severityNames=new LinkedHashMap<String,String>();
+    private final ArrayList<RigorApiDefectResult> details=new ArrayList<RigorApiDefectResult>();
+}
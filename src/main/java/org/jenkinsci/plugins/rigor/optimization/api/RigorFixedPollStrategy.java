@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.List;
+
+//
+// Fixed polling cadence: every 10 seconds, backing off to 20 seconds after 2 minutes
+// and 30 seconds after 5 minutes
+//
+
+public class RigorFixedPollStrategy implements RigorPollStrategy {
+    public long FirstPollDelayMS(List<RigorApiSnapshotResult> started) {
+        return 10000;
+    }
+
+    public long NextPollDelayMS(List<RigorApiSnapshotResult> outstanding, long elapsedMS, int pollCount) {
+        if(elapsedMS>300000) {
+            return 30000;   // after 5 minutes, wait 30 seconds
+        }
+        else if(elapsedMS>120000) {
+            return 20000;   // after 2 minutes, wait 20 seconds
+        }
+        return 10000;
+    }
+
+    public void RecordCompletion(Integer testID, long durationMS) {
+        // nothing to learn
+    }
+}
@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import hudson.init.InitMilestone;
+import jenkins.model.Jenkins;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+// Timers and counters for API calls and snapshots, for alerting on API trouble before builds
+// start timing out. When the Metrics plugin is installed they're published to its registry
+// (see RigorMetricsRegistry); without it every call here does nothing.
+//
+
+public class RigorMetrics {
+    private static final RigorMetrics NONE=new RigorMetrics();
+
+    private static volatile RigorMetrics instance=null;
+
+    // Called before Jenkins has finished starting up, this does nothing until it's known
+    // whether the Metrics plugin is there to publish to, then settles on one or the other
+    public static RigorMetrics Get() {
+        RigorMetrics current=instance;
+        if(current!=null) {
+            return current;
+        }
+        synchronized (RigorMetrics.class) {
+            if(instance==null) {
+                instance=create();
+            }
+            return instance!=null ? instance : NONE;
+        }
+    }
+
+    protected RigorMetrics() {
+    }
+
+    // Publish to the Metrics plugin's registry when it's there, or null if it's too soon to say
+    protected static RigorMetrics create() {
+        Jenkins jenkins=Jenkins.getInstance();
+        if(jenkins==null) {
+            return NONE;    // not running in Jenkins
+        }
+        boolean started=jenkins.getInitLevel()==InitMilestone.COMPLETED;
+        if(jenkins.getPlugin("metrics")!=null) {
+            try {
+                return new RigorMetricsRegistry();
+            }
+            catch (LinkageError e) {
+                LOGGER.log(Level.WARNING,"Metrics plugin unusable, Rigor metrics disabled",e);
+                return NONE;
+            }
+            catch (RuntimeException e) {
+                // Its registry isn't there until the plugin has started
+                if(started) {
+                    LOGGER.log(Level.WARNING,"Metrics plugin unusable, Rigor metrics disabled",e);
+                    return NONE;
+                }
+                return null;
+            }
+        }
+        return started ? NONE : null;
+    }
+
+    // One exchange with the API finished (each retry is its own exchange)
+    public void RecordRequest(String method, String path, RigorApiResponse response, long elapsedNanos) {
+    }
+
+    // A failed request is being tried again
+    public void RecordRetry() {
+    }
+
+    public void RecordSnapshotStarted() {
+    }
+
+    // A snapshot finished scanning. scanMS is null when the scan time isn't known
+    public void RecordSnapshotCompleted(Long scanMS) {
+    }
+
+    public void RecordSnapshotFailed() {
+    }
+
+    // A build gave up waiting for its snapshots
+    public void RecordWaitTimeout() {
+    }
+
+    // The watcher polled a batch of snapshots
+    public void RecordPollCycle() {
+    }
+
+    // The watcher gave up on a poll that took too long. Its requests show as cancelled
+    public void RecordPollTimeout() {
+    }
+
+    //
+    // Naming
+    //
+
+    // Metric name for an API path, relative to the endpoint with the IDs left out,
+    // e.g. /v2/tests/12/snapshots/34/defects gives tests.snapshots.defects
+    public static String Route(String path) {
+        String base=RigorApiClient.GetApiBasePath();
+        if(base!=null && path.startsWith(base)) {
+            path=path.substring(base.length());
+        }
+        StringBuilder route=new StringBuilder();
+        for(String part: path.split("/")) {
+            if(part.length()==0 || Character.isDigit(part.charAt(0))) {
+                continue;
+            }
+            if(route.length()>0) {
+                route.append('.');
+            }
+            route.append(part);
+        }
+        return route.length()==0 ? "root" : route.toString();
+    }
+
+    // The HTTP status, or what happened instead when there was no response
+    public static String Outcome(RigorApiResponse response) {
+        if(response.TransportError==null) {
+            return Integer.toString(response.HttpStatusCode);
+        }
+        if(response.TransportError instanceof CancellationException) {
+            return "cancelled";
+        }
+        if(IsTimeout(response)) {
+            return "timeout";
+        }
+        return "error";
+    }
+
+    // Connect and socket timeouts, and waits for a pooled connection
+    public static boolean IsTimeout(RigorApiResponse response) {
+        return response.TransportError instanceof InterruptedIOException
+                || response.TransportError instanceof TimeoutException;
+    }
+
+    private static final Logger LOGGER=Logger.getLogger(RigorMetrics.class.getName());
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jenkins.metrics.api.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//
+// RigorMetrics published to the Metrics plugin's registry. Only loaded when that plugin is
+// installed. Names:
+//
+//   rigor.api.requests                          every exchange with the API
+//   rigor.api.requests.<method>.<route>.<outcome>   per endpoint and status, e.g.
+//                                               rigor.api.requests.GET.tests.snapshots.200
+//   rigor.api.errors, .retries, .timeouts       5xx/429/network failures, retries, timeouts
+//                                               (including polls abandoned as stuck)
+//   rigor.snapshots.started, .completed, .failed, .wait_timeouts, .poll_cycles
+//   rigor.snapshots.scan_duration               time from start to completion, for snapshots
+//                                               whose start we saw
+//
+// Latencies are the registry's standard Timers, with its exponentially decaying reservoir rather
+// than an HDR histogram. Their percentiles are estimates biased toward the last few minutes,
+// which is what the Metrics plugin's reporters and health pages expect.
+//
+
+public class RigorMetricsRegistry extends RigorMetrics {
+    protected RigorMetricsRegistry() {
+        this.registry=Metrics.metricRegistry();
+        this.requests=this.registry.timer("rigor.api.requests");
+        this.errors=this.registry.meter("rigor.api.errors");
+        this.retries=this.registry.meter("rigor.api.retries");
+        this.timeouts=this.registry.meter("rigor.api.timeouts");
+        this.snapshotsStarted=this.registry.meter("rigor.snapshots.started");
+        this.snapshotsCompleted=this.registry.meter("rigor.snapshots.completed");
+        this.snapshotsFailed=this.registry.meter("rigor.snapshots.failed");
+        this.waitTimeouts=this.registry.meter("rigor.snapshots.wait_timeouts");
+        this.pollCycles=this.registry.meter("rigor.snapshots.poll_cycles");
+        this.scanDuration=this.registry.timer("rigor.snapshots.scan_duration");
+    }
+
+    @Override
+    public void RecordRequest(String method, String path, RigorApiResponse response, long elapsedNanos) {
+        String outcome=Outcome(response);
+        this.requests.update(elapsedNanos,TimeUnit.NANOSECONDS);
+        routeTimer(method,Route(path),outcome).update(elapsedNanos,TimeUnit.NANOSECONDS);
+
+        if(IsTimeout(response)) {
+            this.timeouts.mark();
+        }
+        if(!outcome.equals("cancelled") && RigorRetryPolicy.IsRetryable(true,response)) {
+            this.errors.mark();
+        }
+    }
+
+    @Override
+    public void RecordRetry() {
+        this.retries.mark();
+    }
+
+    @Override
+    public void RecordSnapshotStarted() {
+        this.snapshotsStarted.mark();
+    }
+
+    @Override
+    public void RecordSnapshotCompleted(Long scanMS) {
+        this.snapshotsCompleted.mark();
+        if(scanMS!=null) {
+            this.scanDuration.update(scanMS,TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void RecordSnapshotFailed() {
+        this.snapshotsFailed.mark();
+    }
+
+    @Override
+    public void RecordWaitTimeout() {
+        this.waitTimeouts.mark();
+    }
+
+    @Override
+    public void RecordPollCycle() {
+        this.pollCycles.mark();
+    }
+
+    @Override
+    public void RecordPollTimeout() {
+        this.timeouts.mark();
+    }
+
+    // Timers are looked up here first, saving the registry's name building on every request
+    protected Timer routeTimer(String method, String route, String outcome) {
+        String key=method + " " + route + " " + outcome;
+        Timer timer=this.routeTimers.get(key);
+        if(timer==null) {
+            timer=this.registry.timer(MetricRegistry.name("rigor.api.requests",method,route,outcome));
+            this.routeTimers.putIfAbsent(key,timer);
+        }
+        return timer;
+    }
+
+    private final MetricRegistry registry;
+    private final Timer requests;
+    private final Meter errors;
+    private final Meter retries;
+    private final Meter timeouts;
+    private final Meter snapshotsStarted;
+    private final Meter snapshotsCompleted;
+    private final Meter snapshotsFailed;
+    private final Meter waitTimeouts;
+    private final Meter pollCycles;
+    private final Timer scanDuration;
+    private final ConcurrentHashMap<String,Timer> routeTimers=new ConcurrentHashMap<String,Timer>();
+}
@@ -0,0 +1,19 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.List;
+
+//
+// Decides when to poll outstanding snapshots while waiting for them to complete
+//
+
+public interface RigorPollStrategy {
+    // Delay before the first poll of freshly started snapshots
+    long FirstPollDelayMS(List<RigorApiSnapshotResult> started);
+
+    // Delay before the next poll, given the snapshots still outstanding, time since
+    // they were started, and the number of polls made so far
+    long NextPollDelayMS(List<RigorApiSnapshotResult> outstanding, long elapsedMS, int pollCount);
+
+    // A snapshot of this test finished scanning, taking roughly durationMS
+    void RecordCompletion(Integer testID, long durationMS);
+}
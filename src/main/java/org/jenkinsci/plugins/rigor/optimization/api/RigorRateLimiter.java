@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//
+// Controller-wide token bucket limiting the rate of API requests per API key, so concurrent
+// builds sharing a credential send a steady stream rather than bursts the server throttles.
+//
+// Each request reserves the next free slot in its key's bucket and is sent when that slot
+// comes up, so callers are served first come, first served. Buckets are keyed by the key's
+// fingerprint rather than the Jenkins credential ID, since two credentials may hold one key.
+//
+
+public class RigorRateLimiter {
+    public static final int DefaultRequestsPerSecond=10;
+    public static final int DefaultBurstSize=20;
+
+    private static RigorRateLimiter instance=null;
+
+    public static synchronized RigorRateLimiter Get() {
+        if(instance==null) {
+            instance=new RigorRateLimiter();
+        }
+        return instance;
+    }
+
+    protected RigorRateLimiter() {
+    }
+
+    // Set the limit applied to every key. A rate of 0 turns limiting off.
+    public synchronized void Configure(int requestsPerSecond, int burstSize) {
+        this.requestsPerSecond=requestsPerSecond;
+        this.burstSize=Math.max(1,burstSize);
+        for(Bucket bucket: this.buckets.values()) {
+            bucket.storedPermits=Math.min(bucket.storedPermits,this.burstSize);
+        }
+    }
+
+    // Reserve a slot for one request with the given key, returning how long to wait
+    // (in milliseconds) before sending it
+    public synchronized long Reserve(String keyFingerprint) {
+        Bucket bucket=this.buckets.get(keyFingerprint);
+        if(bucket==null) {
+            bucket=new Bucket(this.burstSize);
+            this.buckets.put(keyFingerprint,bucket);
+        }
+        ++bucket.requests;
+        if(this.requestsPerSecond<=0) {
+            return 0;
+        }
+
+        // Top up from the time that's passed since the bucket was last drawn down
+        long now=System.nanoTime();
+        double intervalNanos=1e9/this.requestsPerSecond;
+        if(now>bucket.nextFreeNanos) {
+            bucket.storedPermits=Math.min(this.burstSize,bucket.storedPermits + (now-bucket.nextFreeNanos)/intervalNanos);
+            bucket.nextFreeNanos=now;
+        }
+
+        // Take a stored permit if there is one, otherwise queue behind everyone already waiting
+        long waitNanos=bucket.nextFreeNanos-now;
+        double fromStored=Math.min(1.0,bucket.storedPermits);
+        bucket.storedPermits-=fromStored;
+        bucket.nextFreeNanos+=(long)((1.0-fromStored)*intervalNanos);
+
+        long waitMS=waitNanos/1000000;
+        if(waitMS>0) {
+            ++bucket.delayedRequests;
+            bucket.totalWaitMS+=waitMS;
+            bucket.maxWaitMS=Math.max(bucket.maxWaitMS,waitMS);
+        }
+        return waitMS;
+    }
+
+    public synchronized int getRequestsPerSecond() {
+        return this.requestsPerSecond;
+    }
+
+    public synchronized int getBurstSize() {
+        return this.burstSize;
+    }
+
+    // Wait metrics per key, for the management page
+    public synchronized List<KeyStats> getStats() {
+        ArrayList<KeyStats> stats=new ArrayList<KeyStats>();
+        long now=System.nanoTime();
+        for(Map.Entry<String,Bucket> entry: this.buckets.entrySet()) {
+            Bucket bucket=entry.getValue();
+            stats.add(new KeyStats(entry.getKey(),bucket.requests,bucket.delayedRequests,bucket.totalWaitMS,
+                    bucket.maxWaitMS,Math.max(0,(bucket.nextFreeNanos-now)/1000000)));
+        }
+        return stats;
+    }
+
+    // Snapshot of one key's limiter state
+    public static class KeyStats {
+        KeyStats(String key, long requests, long delayedRequests, long totalWaitMS, long maxWaitMS, long backlogMS) {
+            this.key=key;
+            this.requests=requests;
+            this.delayedRequests=delayedRequests;
+            this.totalWaitMS=totalWaitMS;
+            this.maxWaitMS=maxWaitMS;
+            this.backlogMS=backlogMS;
+        }
+
+        public String getKey() { return key; }
+        public long getRequests() { return requests; }
+        public long getDelayedRequests() { return delayedRequests; }
+        public long getMaxWaitMS() { return maxWaitMS; }
+        public long getBacklogMS() { return backlogMS; }
+
+        // Average wait over the requests that had to wait at all
+        public long getAverageWaitMS() {
+            return delayedRequests==0 ? 0 : totalWaitMS/delayedRequests;
+        }
+
+        private final String key;
+        private final long requests;
+        private final long delayedRequests;
+        private final long totalWaitMS;
+        private final long maxWaitMS;
+        private final long backlogMS;
+    }
+
+    protected static class Bucket {
+        Bucket(int burstSize) {
+            this.storedPermits=burstSize;
+            this.nextFreeNanos=System.nanoTime();
+        }
+
+        double storedPermits;
+        long nextFreeNanos;
+        long requests=0;
+        long delayedRequests=0;
+        long totalWaitMS=0;
+        long maxWaitMS=0;
+    }
+
+    protected int requestsPerSecond=DefaultRequestsPerSecond;
+    protected int burstSize=DefaultBurstSize;
+    protected final Map<String,Bucket> buckets=new HashMap<String,Bucket>();
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+//
+// Decides which failed API requests are worth another try, and how long to wait first.
+//
+// The client's GETs and PUTs (reads and tag updates) are idempotent, so any transient failure is
+// retried. A POST (starting a snapshot) may have been acted on even if we never saw the response, so it's only retried
+// when we know the server didn't act: the connection was never made, or the server told us
+// to come back later (429/503). POSTs also get a smaller retry budget.
+//
+
+public class RigorRetryPolicy {
+    // Most retries after the first attempt
+    public static final int MaxIdempotentRetries=4;
+    public static final int MaxPostRetries=2;
+
+    // Backoff grows from the base delay, doubling each retry up to the max
+    public static final int BaseDelayMS=500;
+    public static final int MaxDelayMS=15000;
+
+    // Longest Retry-After we'll honour before giving up on the server's advice
+    public static final int MaxRetryAfterMS=60000;
+
+    public static boolean IsIdempotent(String method) {
+        return !"POST".equalsIgnoreCase(method);
+    }
+
+    // Should a request be sent again, given its latest response and how many retries it's had?
+    public static boolean ShouldRetry(boolean idempotent, RigorApiResponse response, int retries) {
+        int budget=idempotent ? MaxIdempotentRetries : MaxPostRetries;
+        return retries<budget && IsRetryable(idempotent,response);
+    }
+
+    // Is this failure transient, so the same request could succeed later?
+    public static boolean IsRetryable(boolean idempotent, RigorApiResponse response) {
+        if(response.Success()) {
+            return false;
+        }
+        if(response.TransportError!=null) {
+            return idempotent ? isTransient(response.TransportError) : neverSent(response.TransportError);
+        }
+        switch(response.HttpStatusCode) {
+            case 429:   // too many requests
+            case 503:   // service unavailable
+                return true;
+            case 500:
+            case 502:
+            case 504:
+                return idempotent;
+            default:
+                return false;
+        }
+    }
+
+    // How long to wait before the next retry. Honours Retry-After on 429/503, otherwise
+    // exponential backoff with full jitter so builds that failed together don't retry together.
+    public static long DelayMS(RigorApiResponse response, int retries) {
+        if(response.RetryAfterMS!=null && (response.HttpStatusCode==429 || response.HttpStatusCode==503)) {
+            return Math.min(Math.max(0,response.RetryAfterMS),MaxRetryAfterMS);
+        }
+        long cap=Math.min((long)MaxDelayMS,(long)BaseDelayMS<<Math.min(retries,20));
+        return ThreadLocalRandom.current().nextLong(cap+1);
+    }
+
+    // Network trouble rather than a problem with the request itself
+    protected static boolean isTransient(Exception e) {
+        return e instanceof IOException || e instanceof TimeoutException;
+    }
+
+    // Failures where the request can't have reached the server
+    protected static boolean neverSent(Exception e) {
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof UnknownHostException
+                || e instanceof TimeoutException;  // no pooled connection became free
+    }
+}
@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+// Remembers how long snapshots of each performance test typically take to scan, so polling
+// can be scheduled around the expected completion time. Kept as a moving average per test ID
+// and saved under JENKINS_HOME so it carries across builds and restarts.
+//
+
+public class RigorScanHistory {
+    // Weight of the newest sample in the moving average
+    public static final double SmoothingFactor=0.3;
+
+    // Longest believable scan. Anything outside (0, MaxDurationMS] is a bad measurement, not a scan
+    public static final long MaxDurationMS=2*60*60*1000L;
+
+    // Most tests to remember, least recently used are dropped first
+    public static final int MaxTests=10000;
+
+    // How often pending changes are written to disk
+    public static final int SaveIntervalSeconds=60;
+
+    private static RigorScanHistory instance=null;
+
+    // Get the shared history, loading it on first use
+    public static synchronized RigorScanHistory Get() {
+        if(instance==null) {
+            instance=new RigorScanHistory(getHistoryFile());
+        }
+        return instance;
+    }
+
+    protected RigorScanHistory(XmlFile file) {
+        this.file=file;
+        load();
+
+        if(this.file!=null) {
+            Timer.get().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    save();
+                }
+            }, SaveIntervalSeconds, SaveIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // Typical scan duration for a test, or null if we've never seen it complete
+    public synchronized Long ExpectedDurationMS(Integer testID) {
+        return this.durations.get(testID);
+    }
+
+    // Fold a newly observed scan duration into the test's average, ignoring implausible ones
+    public synchronized void RecordDuration(Integer testID, long durationMS) {
+        if(durationMS<=0 || durationMS>MaxDurationMS) {
+            return;
+        }
+        Long previous=this.durations.get(testID);
+        long updated=durationMS;
+        if(previous!=null) {
+            updated=Math.round(SmoothingFactor*durationMS + (1-SmoothingFactor)*previous);
+        }
+        this.durations.put(testID,updated);
+        this.dirty=true;
+    }
+
+    // Save anything the timer hasn't written yet, if the history was ever loaded. For Jenkins shutdown
+    public static synchronized void Flush() {
+        if(instance!=null) {
+            instance.save();
+        }
+    }
+
+    // Write out pending changes, if any
+    public void save() {
+        Map<Integer,Long> copy;
+        synchronized (this) {
+            if(!this.dirty || this.file==null) {
+                return;
+            }
+            copy=new HashMap<Integer,Long>(this.durations);
+            this.dirty=false;
+        }
+        try {
+            this.file.write(copy);
+        }
+        catch (Exception e) {
+            LOGGER.log(Level.WARNING,"Failed to save Rigor scan history",e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected synchronized void load() {
+        if(this.file==null || !this.file.exists()) {
+            return;
+        }
+        try {
+            this.durations.putAll((Map<Integer,Long>)this.file.read());
+        }
+        catch (Exception e) {
+            LOGGER.log(Level.WARNING,"Failed to load Rigor scan history, starting fresh",e);
+        }
+    }
+
+    // History lives in JENKINS_HOME, or in memory only when running outside Jenkins
+    protected static XmlFile getHistoryFile() {
+        Jenkins jenkins=Jenkins.getInstance();
+        if(jenkins==null) {
+            return null;
+        }
+        return new XmlFile(new File(jenkins.getRootDir(),"rigor-optimization-scan-history.xml"));
+    }
+
+    private final XmlFile file;
+    private boolean dirty=false;
+    private final Map<Integer,Long> durations=new LinkedHashMap<Integer,Long>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer,Long> eldest) {
+            return size()>MaxTests;
+        }
+    };
+
+    private static final Logger LOGGER=Logger.getLogger(RigorScanHistory.class.getName());
+}
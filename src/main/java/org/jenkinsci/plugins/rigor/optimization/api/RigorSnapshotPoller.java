@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//
+// Looks up the status of outstanding snapshots. Snapshots of the same test are fetched together
+// with one filtered list request, falling back to a GET per snapshot for any the list didn't
+// return (or if the list call fails).
+//
+
+public class RigorSnapshotPoller {
+    // Longest a poll may wait for its responses before it's abandoned and tried again
+    public static final int PollCycleTimeoutMS=30000;
+
+    // Most snapshot ids to ask for in one list request, all of which must fit on the one page it returns
+    public static final int MaxSnapshotsPerListRequest=RigorApiClient.MaxPageSize;
+
+    public RigorSnapshotPoller(RigorApiClient apiClient) {
+        this.apiClient=apiClient;
+    }
+
+    // Group outstanding snapshots by test, in chunks no bigger than a list request page.
+    // Each chunk can be looked up with one PollTest call.
+    public static Map<Integer,List<List<Integer>>> GroupByTest(List<RigorApiSnapshotResult> outstanding) {
+        Map<Integer,List<List<Integer>>> byTest=new LinkedHashMap<Integer,List<List<Integer>>>();
+        for(RigorApiSnapshotResult snapshot: outstanding) {
+            List<List<Integer>> chunks=byTest.get(snapshot.test_id);
+            if(chunks==null) {
+                chunks=new ArrayList<List<Integer>>();
+                byTest.put(snapshot.test_id,chunks);
+            }
+            if(chunks.isEmpty() || chunks.get(chunks.size()-1).size()>=MaxSnapshotsPerListRequest) {
+                chunks.add(new ArrayList<Integer>());
+            }
+            chunks.get(chunks.size()-1).add(snapshot.snapshot_id);
+        }
+        return byTest;
+    }
+
+    // Look up a group of snapshots for one test, with a list request when there's more than one.
+    // Returns the statuses keyed by snapshot id. Cancelling it cancels the requests.
+    public ListenableFuture<Map<Integer,RigorApiSnapshotResult>> PollTest(final Integer testID, final List<Integer> snapshotIDs) {
+        final SettableFuture<Map<Integer,RigorApiSnapshotResult>> result=SettableFuture.create();
+        if(snapshotIDs.size()==1) {
+            pollIndividually(testID,snapshotIDs,new HashMap<Integer,RigorApiSnapshotResult>(),result);
+            return result;
+        }
+
+        ListenableFuture<RigorApiSnapshotResultList> list=this.apiClient.GetSnapshotsAsync(testID,snapshotIDs);
+        RigorApiClient.propagateCancellation(result,list);
+        Futures.addCallback(list, new FutureCallback<RigorApiSnapshotResultList>() {
+            @Override
+            public void onSuccess(RigorApiSnapshotResultList list) {
+                Map<Integer,RigorApiSnapshotResult> found=new HashMap<Integer,RigorApiSnapshotResult>();
+                if(list!=null && list.snapshots!=null) {
+                    for(RigorApiSnapshotResult snapshot: list.snapshots) {
+                        if(snapshot.snapshot_id!=null && snapshotIDs.contains(snapshot.snapshot_id)) {
+                            found.put(snapshot.snapshot_id,snapshot);
+                        }
+                    }
+                }
+
+                // Anything the list didn't include gets fetched directly
+                ArrayList<Integer> missing=new ArrayList<Integer>();
+                for(Integer id: snapshotIDs) {
+                    if(!found.containsKey(id)) {
+                        missing.add(id);
+                    }
+                }
+                pollIndividually(testID,missing,found,result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if(result.isCancelled()) {
+                    return;
+                }
+                // List lookup not available, fall back to one GET per snapshot
+                pollIndividually(testID,snapshotIDs,new HashMap<Integer,RigorApiSnapshotResult>(),result);
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+        return result;
+    }
+
+    // GET each snapshot directly, adding to found and completing result when all are in
+    protected void pollIndividually(Integer testID, final List<Integer> snapshotIDs,
+                                    final Map<Integer,RigorApiSnapshotResult> found,
+                                    final SettableFuture<Map<Integer,RigorApiSnapshotResult>> result) {
+        if(snapshotIDs.isEmpty()) {
+            result.set(found);
+            return;
+        }
+
+        ArrayList<ListenableFuture<RigorApiSnapshotResult>> polls=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
+        for(Integer snapshotID: snapshotIDs) {
+            ListenableFuture<RigorApiSnapshotResult> poll=this.apiClient.GetSnapshotAsync(testID,snapshotID);
+            RigorApiClient.propagateCancellation(result,poll);
+            polls.add(poll);
+        }
+        Futures.addCallback(Futures.allAsList(polls), new FutureCallback<List<RigorApiSnapshotResult>>() {
+            @Override
+            public void onSuccess(List<RigorApiSnapshotResult> snapshots) {
+                for(int i=0;i<snapshots.size();++i) {
+                    found.put(snapshotIDs.get(i),snapshots.get(i));
+                }
+                result.set(found);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+    }
+
+    protected RigorApiClient apiClient;
+}
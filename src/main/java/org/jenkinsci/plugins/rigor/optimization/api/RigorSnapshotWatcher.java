@@ -0,0 +1,380 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+// Controller-wide watcher for in-flight snapshots. Rather than every build sleeping in its own
+// polling loop, builds hand their snapshots to this service and wait on a future. A single
+// scheduler thread decides which snapshots are due, polls them in batches per credential and
+// test through the async client, and completes each build's future when its scan is done.
+//
+// A snapshot watched by several builds is only polled once. A poll that every build has
+// stopped waiting on is cancelled.
+//
+
+public class RigorSnapshotWatcher {
+    // How often the scheduler looks for snapshots due to be polled
+    public static final int TickMS=1000;
+
+    // Snapshots due within this window are polled early, so they can share a batch
+    public static final int BatchWindowMS=2000;
+
+    // A snapshot first watched longer than this after it started was picked up late (a resumed
+    // Pipeline, a post-build collect). It may have finished long before our first poll.
+    public static final int LateWatchMS=30000;
+
+    // Reached once the watcher has stopped at shutdown. The HTTP transport it polls through waits for it
+    public static final String StoppedMilestone="rigor-snapshot-watcher-stopped";
+
+    private static RigorSnapshotWatcher instance=null;
+
+    // Get the shared watcher, starting it on first use
+    public static synchronized RigorSnapshotWatcher Get() {
+        if(instance==null) {
+            instance=new RigorSnapshotWatcher(new RigorAdaptivePollStrategy(RigorScanHistory.Get()));
+        }
+        return instance;
+    }
+
+    // Stop polling when Jenkins shuts down, then save the scan history and tag state so nothing
+    // learned since their last timed save is lost. Builds still waiting aren't failed: a Pipeline
+    // step resumes watching after the restart. A later Get() starts a new watcher.
+    @Terminator(attains=StoppedMilestone)
+    public static void Shutdown() {
+        RigorSnapshotWatcher watcher;
+        synchronized (RigorSnapshotWatcher.class) {
+            watcher=instance;
+            instance=null;
+        }
+        if(watcher!=null) {
+            watcher.close();
+        }
+        RigorScanHistory.Flush();
+        RigorTagState.Flush();
+    }
+
+    protected RigorSnapshotWatcher(RigorPollStrategy pollStrategy) {
+        this.pollStrategy=pollStrategy;
+        this.scheduler=Executors.newSingleThreadScheduledExecutor(
+                new NamingThreadFactory(new DaemonThreadFactory(), "Rigor snapshot watcher"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                }
+                catch (Throwable t) {
+                    // Never let the scheduler die, or nothing gets polled again
+                    LOGGER.log(Level.WARNING,"Rigor snapshot watcher poll failed",t);
+                }
+            }
+        }, TickMS, TickMS, TimeUnit.MILLISECONDS);
+    }
+
+    // Watch a started snapshot until its scan finishes. The returned future completes with the
+    // finished snapshot, or fails if the scan fails or can't be polled. Cancel it to stop waiting.
+    public ListenableFuture<RigorApiSnapshotResult> Watch(RigorApiClient client, RigorApiSnapshotResult snapshot) {
+        final SettableFuture<RigorApiSnapshotResult> waiter=SettableFuture.create();
+        String key=client.getKeyFingerprint() + ":" + snapshot.snapshot_id;
+        long now=System.currentTimeMillis();
+
+        final WatchedSnapshot watched;
+        synchronized (this) {
+            WatchedSnapshot existing=this.watching.get(key);
+            if(existing==null) {
+                // Time the scan from when it started, if we know, rather than from now
+                long startTime=(snapshot.StartedTimeMS!=null) ? snapshot.StartedTimeMS : now;
+                existing=new WatchedSnapshot(client,snapshot,startTime);
+                if(snapshot.StartedTimeMS!=null && now-startTime<=LateWatchMS) {
+                    existing.timed=true;
+                    existing.nextPollTime=startTime + this.pollStrategy.FirstPollDelayMS(Collections.singletonList(snapshot));
+                }
+                else {
+                    existing.nextPollTime=now + this.pollStrategy.NextPollDelayMS(Collections.singletonList(snapshot),now-startTime,0);
+                }
+                this.watching.put(key,existing);
+            }
+            existing.waiters.add(waiter);
+            watched=existing;
+        }
+
+        waiter.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(waiter.isCancelled()) {
+                    abandoned(watched);
+                }
+            }
+        }, RigorApiHttpTransport.Get().getWorkerExecutor());
+        return waiter;
+    }
+
+    // Stop the scheduler, along with any poll timeouts it's holding
+    protected void close() {
+        this.scheduler.shutdownNow();
+    }
+
+    // A build stopped waiting on a snapshot. Once nobody waits on it, it's no longer watched.
+    protected void abandoned(WatchedSnapshot watched) {
+        ListenableFuture<?> unwanted;
+        synchronized (this) {
+            removeDoneWaiters(watched);
+            if(!watched.waiters.isEmpty()) {
+                return;
+            }
+            this.watching.values().remove(watched);
+            unwanted=leaveBatch(watched);
+        }
+        if(unwanted!=null) {
+            unwanted.cancel(true);
+        }
+    }
+
+    // Number of distinct snapshots being watched
+    public synchronized int getWatchedCount() {
+        return this.watching.size();
+    }
+
+    // Number of build waits across all watched snapshots
+    public synchronized int getWaiterCount() {
+        int count=0;
+        for(WatchedSnapshot watched: this.watching.values()) {
+            count+=watched.waiters.size();
+        }
+        return count;
+    }
+
+    // Poll everything that's due, batched by credential
+    protected void tick() {
+        long now=System.currentTimeMillis();
+        Map<String,List<WatchedSnapshot>> dueByKey=new LinkedHashMap<String,List<WatchedSnapshot>>();
+        List<ListenableFuture<?>> unwanted=new ArrayList<ListenableFuture<?>>();
+
+        synchronized (this) {
+            Iterator<WatchedSnapshot> it=this.watching.values().iterator();
+            while(it.hasNext()) {
+                WatchedSnapshot watched=it.next();
+
+                // Drop waits that were given up on, and snapshots nobody is waiting for
+                removeDoneWaiters(watched);
+                if(watched.waiters.isEmpty()) {
+                    it.remove();
+                    ListenableFuture<?> poll=leaveBatch(watched);
+                    if(poll!=null) {
+                        unwanted.add(poll);
+                    }
+                    continue;
+                }
+
+                if(!watched.inFlight && watched.nextPollTime<=now+BatchWindowMS) {
+                    watched.inFlight=true;
+                    List<WatchedSnapshot> due=dueByKey.get(watched.client.getKeyFingerprint());
+                    if(due==null) {
+                        due=new ArrayList<WatchedSnapshot>();
+                        dueByKey.put(watched.client.getKeyFingerprint(),due);
+                    }
+                    due.add(watched);
+                }
+            }
+        }
+
+        for(ListenableFuture<?> poll: unwanted) {
+            poll.cancel(true);
+        }
+        for(List<WatchedSnapshot> due: dueByKey.values()) {
+            poll(due,now);
+        }
+    }
+
+    protected void removeDoneWaiters(WatchedSnapshot watched) {
+        Iterator<SettableFuture<RigorApiSnapshotResult>> waiters=watched.waiters.iterator();
+        while(waiters.hasNext()) {
+            if(waiters.next().isDone()) {
+                waiters.remove();
+            }
+        }
+    }
+
+    // Take a snapshot out of the poll it's in, returning that poll if nobody wants it any more.
+    // Call holding the lock.
+    protected ListenableFuture<?> leaveBatch(WatchedSnapshot watched) {
+        PollBatch batch=watched.batch;
+        watched.batch=null;
+        if(batch==null || --batch.wanted>0) {
+            return null;
+        }
+        return batch.statuses;
+    }
+
+    // Poll a set of due snapshots that share a credential
+    protected void poll(List<WatchedSnapshot> due, final long pollTime) {
+        RigorMetrics.Get().RecordPollCycle();
+        RigorSnapshotPoller poller=new RigorSnapshotPoller(due.get(0).client);
+
+        ArrayList<RigorApiSnapshotResult> snapshots=new ArrayList<RigorApiSnapshotResult>();
+        final Map<Integer,WatchedSnapshot> byID=new HashMap<Integer,WatchedSnapshot>();
+        for(WatchedSnapshot watched: due) {
+            snapshots.add(watched.snapshot);
+            byID.put(watched.snapshot.snapshot_id,watched);
+        }
+
+        for(Map.Entry<Integer,List<List<Integer>>> test: RigorSnapshotPoller.GroupByTest(snapshots).entrySet()) {
+            for(final List<Integer> chunk: test.getValue()) {
+                final ListenableFuture<Map<Integer,RigorApiSnapshotResult>> statuses=poller.PollTest(test.getKey(),chunk);
+                synchronized (this) {
+                    PollBatch batch=new PollBatch(statuses,chunk.size());
+                    for(Integer id: chunk) {
+                        byID.get(id).batch=batch;
+                    }
+                }
+
+                // Don't let a stuck request hold these snapshots up, abandon it and poll again
+                this.scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(statuses.cancel(true)) {
+                            RigorMetrics.Get().RecordPollTimeout();
+                        }
+                    }
+                }, RigorSnapshotPoller.PollCycleTimeoutMS, TimeUnit.MILLISECONDS);
+
+                Futures.addCallback(statuses, new FutureCallback<Map<Integer,RigorApiSnapshotResult>>() {
+                    @Override
+                    public void onSuccess(Map<Integer,RigorApiSnapshotResult> results) {
+                        for(Integer id: chunk) {
+                            handleStatus(byID.get(id),results.get(id),pollTime);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        // A stuck or transiently failing poll isn't the scan failing, try again next time
+                        boolean pollAgain=statuses.isCancelled() || RigorApiException.IsTransient(t);
+                        if(pollAgain && !statuses.isCancelled()) {
+                            LOGGER.log(Level.FINE,"Rigor snapshot poll failed, will poll again",t);
+                        }
+                        for(Integer id: chunk) {
+                            if(pollAgain) {
+                                handleStatus(byID.get(id),null,pollTime);
+                            }
+                            else {
+                                complete(byID.get(id),null,t);
+                            }
+                        }
+                    }
+                }, RigorApiHttpTransport.Get().getWorkerExecutor());
+            }
+        }
+    }
+
+    // Act on the latest status of a watched snapshot (null if we didn't get one this time)
+    protected void handleStatus(WatchedSnapshot watched, RigorApiSnapshotResult status, long pollTime) {
+        if(status!=null && status.IsFailedScan()) {
+            RigorMetrics.Get().RecordSnapshotFailed();
+            complete(watched,null,new Exception("Test " + watched.snapshot.test_id + ", snapshot " + watched.snapshot.snapshot_id + " failed scanning."));
+            return;
+        }
+        if(status!=null && status.IsScanComplete()) {
+            // It finished somewhere between the last time we knew it was running and this poll.
+            // If we don't know that, it may have finished long ago and the scan time is unknown
+            Long scanMS=null;
+            if(watched.timed) {
+                scanMS=(watched.lastPollTime+pollTime)/2-watched.startTime;
+                this.pollStrategy.RecordCompletion(watched.snapshot.test_id,scanMS);
+            }
+            RigorMetrics.Get().RecordSnapshotCompleted(scanMS);
+            complete(watched,status,null);
+            return;
+        }
+
+        // Still scanning (or no answer), schedule the next look
+        long now=System.currentTimeMillis();
+        synchronized (this) {
+            watched.batch=null;
+            if(status!=null) {
+                watched.lastPollTime=pollTime;
+                ++watched.pollCount;
+                watched.timed=(watched.snapshot.StartedTimeMS!=null);
+            }
+            watched.nextPollTime=now + this.pollStrategy.NextPollDelayMS(
+                    Collections.singletonList(watched.snapshot),now-watched.startTime,watched.pollCount);
+            watched.inFlight=false;
+        }
+    }
+
+    // Stop watching a snapshot and report the outcome to everyone waiting on it
+    protected void complete(WatchedSnapshot watched, RigorApiSnapshotResult result, Throwable error) {
+        ArrayList<SettableFuture<RigorApiSnapshotResult>> waiters;
+        synchronized (this) {
+            this.watching.values().remove(watched);
+            watched.batch=null;
+            waiters=new ArrayList<SettableFuture<RigorApiSnapshotResult>>(watched.waiters);
+            watched.waiters.clear();
+        }
+        for(SettableFuture<RigorApiSnapshotResult> waiter: waiters) {
+            if(error!=null) {
+                waiter.setException(error);
+            }
+            else {
+                waiter.set(result);
+            }
+        }
+    }
+
+    // Polling state for one snapshot
+    protected static class WatchedSnapshot {
+        WatchedSnapshot(RigorApiClient client, RigorApiSnapshotResult snapshot, long startTime) {
+            this.client=client;
+            this.snapshot=snapshot;
+            this.startTime=startTime;
+            this.lastPollTime=startTime;
+        }
+
+        final RigorApiClient client;
+        final RigorApiSnapshotResult snapshot;
+        final long startTime;
+        final List<SettableFuture<RigorApiSnapshotResult>> waiters=new ArrayList<SettableFuture<RigorApiSnapshotResult>>();
+        long lastPollTime;
+        long nextPollTime;
+        int pollCount=0;
+        boolean timed=false;    // lastPollTime is a time it was known to be running, from a known start
+        boolean inFlight=false;
+        PollBatch batch=null;   // the poll in flight for it, if any
+    }
+
+    // One in-flight poll, and how many of its snapshots are still wanted
+    protected static class PollBatch {
+        PollBatch(ListenableFuture<?> statuses, int wanted) {
+            this.statuses=statuses;
+            this.wanted=wanted;
+        }
+
+        final ListenableFuture<?> statuses;
+        int wanted;
+    }
+
+    protected final RigorPollStrategy pollStrategy;
+    protected final ScheduledExecutorService scheduler;
+    protected final Map<String,WatchedSnapshot> watching=new LinkedHashMap<String,WatchedSnapshot>();
+
+    private static final Logger LOGGER=Logger.getLogger(RigorSnapshotWatcher.class.getName());
+}
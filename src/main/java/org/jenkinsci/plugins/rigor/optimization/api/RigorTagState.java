@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+// Remembers which tags we've already added to each performance test, so builds don't re-send
+// the same "Jenkins <project>" tag update every time. Tags are only added (never replaced), so
+// a test needs an update only when one of the tags we want isn't on it yet.
+//
+// What we remember is re-checked: entries older than the revalidation period are sent again,
+// and test details seen by the test cache refresh or drop them (e.g. a tag removed in Rigor).
+// Saved under JENKINS_HOME so it carries across restarts.
+//
+
+public class RigorTagState {
+    // How long an applied tag is trusted before it's sent again
+    public static final int RevalidateHours=24;
+
+    // Most tests to remember, least recently used are dropped first
+    public static final int MaxTests=10000;
+
+    // How often pending changes are written to disk
+    public static final int SaveIntervalSeconds=60;
+
+    private static RigorTagState instance=null;
+
+    public static synchronized RigorTagState Get() {
+        if(instance==null) {
+            instance=new RigorTagState(getStateFile());
+        }
+        return instance;
+    }
+
+    protected RigorTagState(XmlFile file) {
+        this.file=file;
+        load();
+
+        if(this.file!=null) {
+            Timer.get().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    save();
+                }
+            }, SaveIntervalSeconds, SaveIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // Are all these tags known to be on the test, recently enough to trust?
+    public synchronized boolean IsApplied(String keyFingerprint, Integer testID, List<RigorApiTag> tags) {
+        Map<String,Long> applied=this.tests.get(testKey(keyFingerprint,testID));
+        if(applied==null) {
+            return false;
+        }
+        long oldest=System.currentTimeMillis() - RevalidateHours*3600000L;
+        for(RigorApiTag tag: tags) {
+            Long verified=applied.get(tagKey(tag));
+            if(verified==null || verified<oldest) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Note tags were just added to the test
+    public synchronized void RecordApplied(String keyFingerprint, Integer testID, List<RigorApiTag> tags) {
+        String key=testKey(keyFingerprint,testID);
+        Map<String,Long> applied=this.tests.get(key);
+        if(applied==null) {
+            applied=new HashMap<String,Long>();
+            this.tests.put(key,applied);
+        }
+        long now=System.currentTimeMillis();
+        for(RigorApiTag tag: tags) {
+            applied.put(tagKey(tag),now);
+        }
+        this.dirty=true;
+    }
+
+    // Check what we remember against the tags a test actually has, as seen in its details
+    public synchronized void Observe(String keyFingerprint, Integer testID, List<RigorApiTag> currentTags) {
+        Map<String,Long> applied=this.tests.get(testKey(keyFingerprint,testID));
+        if(applied==null || currentTags==null) {
+            return;
+        }
+        // Match on name only, the API may report priority differently than we sent it
+        HashMap<String,Boolean> present=new HashMap<String,Boolean>();
+        for(RigorApiTag tag: currentTags) {
+            present.put(tag.name,Boolean.TRUE);
+        }
+
+        long now=System.currentTimeMillis();
+        Iterator<Map.Entry<String,Long>> it=applied.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<String,Long> entry=it.next();
+            String name=entry.getKey().substring(0,entry.getKey().lastIndexOf('|'));
+            if(present.containsKey(name)) {
+                entry.setValue(now);
+            }
+            else {
+                it.remove();
+            }
+        }
+        this.dirty=true;
+    }
+
+    // Save anything the timer hasn't written yet, if the state was ever loaded. For Jenkins shutdown
+    public static synchronized void Flush() {
+        if(instance!=null) {
+            instance.save();
+        }
+    }
+
+    // Write out pending changes, if any
+    public void save() {
+        Map<String,Map<String,Long>> copy=new HashMap<String,Map<String,Long>>();
+        synchronized (this) {
+            if(!this.dirty || this.file==null) {
+                return;
+            }
+            for(Map.Entry<String,Map<String,Long>> entry: this.tests.entrySet()) {
+                copy.put(entry.getKey(),new HashMap<String,Long>(entry.getValue()));
+            }
+            this.dirty=false;
+        }
+        try {
+            this.file.write(copy);
+        }
+        catch (Exception e) {
+            LOGGER.log(Level.WARNING,"Failed to save Rigor tag state",e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected synchronized void load() {
+        if(this.file==null || !this.file.exists()) {
+            return;
+        }
+        try {
+            this.tests.putAll((Map<String,Map<String,Long>>)this.file.read());
+        }
+        catch (Exception e) {
+            LOGGER.log(Level.WARNING,"Failed to load Rigor tag state, starting fresh",e);
+        }
+    }
+
+    protected static String testKey(String keyFingerprint, Integer testID) {
+        return keyFingerprint + ":" + testID;
+    }
+
+    protected static String tagKey(RigorApiTag tag) {
+        return tag.name + "|" + tag.priority;
+    }
+
+    // State lives in JENKINS_HOME, or in memory only when running outside Jenkins
+    protected static XmlFile getStateFile() {
+        Jenkins jenkins=Jenkins.getInstance();
+        if(jenkins==null) {
+            return null;
+        }
+        return new XmlFile(new File(jenkins.getRootDir(),"rigor-optimization-tag-state.xml"));
+    }
+
+    private final XmlFile file;
+    private boolean dirty=false;
+    private final Map<String,Map<String,Long>> tests=new LinkedHashMap<String,Map<String,Long>>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Map<String,Long>> eldest) {
+            return size()>MaxTests;
+        }
+    };
+
+    private static final Logger LOGGER=Logger.getLogger(RigorTagState.class.getName());
+}
@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//
+// Controller-wide cache of which performance tests exist, and their details, per API key.
+// Lets repeated checks of the same test IDs (Verify buttons, every build) skip the API, and
+// fills in bulk from the paged Get Tests listing instead of one request per test.
+//
+// Entries expire so renamed or deleted tests are noticed. Tests found missing are remembered
+// for less time than tests found, since a missing test is usually about to be created.
+//
+
+public class RigorTestCache {
+    // How long a lookup stays good
+    public static final int ExistsTTLSeconds=600;
+    public static final int MissingTTLSeconds=60;
+
+    // Most entries to keep, least recently used are dropped first
+    public static final int MaxEntries=10000;
+
+    // With at least this many unknown IDs, list the tests rather than check each one
+    public static final int ListThreshold=3;
+
+    // Listing page size, and the most pages to read before checking the rest one by one
+    public static final int ListPageSize=100;
+    public static final int MaxListPages=20;
+
+    private static RigorTestCache instance=null;
+
+    public static synchronized RigorTestCache Get() {
+        if(instance==null) {
+            instance=new RigorTestCache();
+        }
+        return instance;
+    }
+
+    protected RigorTestCache() {
+    }
+
+    // Look up tests by ID, from the cache where we can. Returns the details of each test that
+    // exists, keyed by ID; IDs missing from the result don't exist.
+    public Map<Integer,RigorApiTestResult> FindTests(RigorApiClient client, List<Integer> testIDs) throws Exception {
+        String key=client.getKeyFingerprint();
+        Map<Integer,RigorApiTestResult> found=new LinkedHashMap<Integer,RigorApiTestResult>();
+        Set<Integer> unknown=new HashSet<Integer>();
+        lookup(key,testIDs,found,unknown);
+
+        // Plenty to look up, read through the test list for them
+        if(unknown.size()>=ListThreshold) {
+            listTests(client,unknown,found);
+        }
+
+        // Check the rest individually, in parallel
+        if(!unknown.isEmpty()) {
+            checkTests(client,unknown,found);
+        }
+        return found;
+    }
+
+    // Number of tests cached, found or missing
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    // Split testIDs into those we know about (adding existing ones to found) and unknown
+    protected synchronized void lookup(String key, List<Integer> testIDs, Map<Integer,RigorApiTestResult> found, Set<Integer> unknown) {
+        long now=System.currentTimeMillis();
+        for(Integer id: testIDs) {
+            Entry entry=this.entries.get(key + ":" + id);
+            if(entry==null || entry.expires<now) {
+                unknown.add(id);
+            }
+            else if(entry.test!=null) {
+                found.put(id,entry.test);
+            }
+        }
+    }
+
+    // Page through the test list until every unknown ID turns up or an empty page ends it. The
+    // listing may skip tests (pages shorter than asked for, tests added while paging), so IDs it
+    // didn't turn up are left unknown for checkTests rather than taken as missing.
+    protected void listTests(RigorApiClient client, Set<Integer> unknown, Map<Integer,RigorApiTestResult> found) throws Exception {
+        String key=client.getKeyFingerprint();
+        for(int page=1;page<=MaxListPages && !unknown.isEmpty();++page) {
+            RigorApiTestResultList list;
+            try {
+                list=client.GetTests(page,ListPageSize);
+            }
+            catch (Exception e) {
+                return;     // the rest get checked one by one
+            }
+            int count=(list==null || list.tests==null) ? 0 : list.tests.size();
+            if(count==0) {
+                return;     // reached the end
+            }
+            for(int i=0;i<count;++i) {
+                RigorApiTestResult test=list.tests.get(i);
+                if(test.test_id==null) {
+                    continue;
+                }
+                put(key,test.test_id,test);
+                if(unknown.remove(test.test_id)) {
+                    found.put(test.test_id,test);
+                }
+            }
+        }
+    }
+
+    // Look up each remaining ID directly
+    protected void checkTests(RigorApiClient client, Set<Integer> unknown, Map<Integer,RigorApiTestResult> found) throws Exception {
+        String key=client.getKeyFingerprint();
+        ArrayList<Integer> ids=new ArrayList<Integer>(unknown);
+        ArrayList<ListenableFuture<RigorApiResponse>> checks=new ArrayList<ListenableFuture<RigorApiResponse>>();
+        for(Integer id: ids) {
+            checks.add(client.TestForValidTestIDAsync(id));
+        }
+
+        List<RigorApiResponse> responses=RigorApiClient.await(Futures.allAsList(checks));
+        for(int i=0;i<ids.size();++i) {
+            RigorApiResponse resp=responses.get(i);
+            if(resp.Success()) {
+                RigorApiTestResult test=(resp.Result instanceof RigorApiTestResult) ? (RigorApiTestResult)resp.Result : new RigorApiTestResult();
+                put(key,ids.get(i),test);
+                found.put(ids.get(i),test);
+            }
+            else if(resp.HttpStatusCode==404) {
+                put(key,ids.get(i),null);
+            }
+            // anything else says nothing about the test, don't cache it
+        }
+        unknown.clear();
+    }
+
+    protected synchronized void put(String key, Integer testID, RigorApiTestResult test) {
+        if(test!=null && test.tags!=null) {
+            RigorTagState.Get().Observe(key,testID,test.tags);
+        }
+        long ttl=(test!=null ? ExistsTTLSeconds : MissingTTLSeconds)*1000L;
+        this.entries.put(key + ":" + testID,new Entry(test,System.currentTimeMillis()+ttl));
+    }
+
+    protected static class Entry {
+        Entry(RigorApiTestResult test, long expires) {
+            this.test=test;
+            this.expires=expires;
+        }
+
+        final RigorApiTestResult test;     // null if the test doesn't exist
+        final long expires;
+    }
+
+    protected final Map<String,Entry> entries=new LinkedHashMap<String,Entry>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+            return size()>MaxEntries;
+        }
+    };
+}
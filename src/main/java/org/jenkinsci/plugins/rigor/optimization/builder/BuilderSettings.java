@@ -3,6 +3,8 @@ package org.jenkinsci.plugins.rigor.optimization.builder;
 import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
 
 import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -11,7 +13,8 @@ import java.util.Set;
 /**
  * Configured settings for a Rigor Optimization builder step
  */
-public class BuilderSettings {
+public class BuilderSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
 
     public BuilderSettings() {
         this.InputFailOnResults = false;
@@ -27,8 +30,22 @@ public class BuilderSettings {
         // to pass?
         this.TestTimeoutSecondsParsed = 300; // 5 minutes
         this.FailBuildOnSnapshotError = true;
+
+        // Wait for results in the build step itself unless asked to defer
+        this.CollectResultsLater = false;
+
+        // Wait for every snapshot even once the build has failed
+        this.FailFast = false;
+
+        // Limit on parallel API calls per build (from global config)
+        this.MaxConcurrentRequests = DefaultMaxConcurrentRequests;
+
+        // Fetch defects per rule unless the global option says otherwise
+        this.ConsolidatedDefectFetch = false;
     }
 
+    public static final int DefaultMaxConcurrentRequests = 8;
+
     // Raw inputs from config form
     public String CredentialsId;
     public String InputPerformanceTestIds;
@@ -44,6 +61,18 @@ public class BuilderSettings {
     public Boolean FailBuildOnSnapshotError;
     public Boolean DoPolling;
 
+    // Leave waiting for results to the post-build recorder
+    public Boolean CollectResultsLater;
+
+    // Stop waiting on the first failed snapshot, optionally cancelling the rest
+    public Boolean FailFast;
+
+    // Concurrency control
+    public Integer MaxConcurrentRequests;
+
+    // Fetch each snapshot's defects once and check all rules locally (from global config)
+    public Boolean ConsolidatedDefectFetch;
+
     // Parsed values
     public ArrayList<Integer> PerformanceTestIDs;
     public Integer PerformanceScore;
@@ -84,6 +113,37 @@ public class BuilderSettings {
         };
     public ArrayList<Integer> PerformanceBudgetDefectIds = new ArrayList<Integer>(Arrays.asList(intArray));
 
+    // Independent copy, for a build to parse and keep without touching the job's settings
+    public BuilderSettings Copy() {
+        BuilderSettings copy = new BuilderSettings();
+        copy.CredentialsId = this.CredentialsId;
+        copy.InputPerformanceTestIds = this.InputPerformanceTestIds;
+        copy.InputFailOnResults = this.InputFailOnResults;
+        copy.InputPerformanceScore = this.InputPerformanceScore;
+        copy.InputCriticalNumber = this.InputCriticalNumber;
+        copy.InputFoundDefectIds = this.InputFoundDefectIds;
+        copy.EnforcePerformanceBudgets = this.EnforcePerformanceBudgets;
+        copy.InputTestTimeoutSeconds = this.InputTestTimeoutSeconds;
+        copy.TestTimeoutSecondsParsed = this.TestTimeoutSecondsParsed;
+        copy.FailBuildOnSnapshotError = this.FailBuildOnSnapshotError;
+        copy.DoPolling = this.DoPolling;
+        copy.CollectResultsLater = this.CollectResultsLater;
+        copy.FailFast = this.FailFast;
+        copy.MaxConcurrentRequests = this.MaxConcurrentRequests;
+        copy.ConsolidatedDefectFetch = this.ConsolidatedDefectFetch;
+        copy.PerformanceTestIDs = copyList(this.PerformanceTestIDs);
+        copy.PerformanceScore = this.PerformanceScore;
+        copy.CriticalNumber = this.CriticalNumber;
+        copy.FoundDefectIds = copyList(this.FoundDefectIds);
+        copy.PerformanceBudgetDefectIds = copyList(this.PerformanceBudgetDefectIds);
+        return copy;
+    }
+
+    // Settings loaded from an older job config may lack a list
+    private static ArrayList<Integer> copyList(ArrayList<Integer> list) {
+        return list == null ? null : new ArrayList<Integer>(list);
+    }
+
     /*
      * Parsing and Validation
      */
@@ -209,4 +269,42 @@ public class BuilderSettings {
         return Utils.ParseOptionalNonNegative(value);
     }
 
+    public static Integer ParseMaxConcurrentRequests(String value) throws Exception {
+        Integer limit = Utils.ParseOptionalNonNegative(value);
+        if (limit != null && limit < 1) {
+            throw new Exception("Value must be 1 or larger");
+        }
+        return limit;
+    }
+
+    // Rate limit across all builds using one API key. 0 turns limiting off.
+    public static Integer ParseApiRequestsPerSecond(String value) throws Exception {
+        return Utils.ParseOptionalNonNegative(value);
+    }
+
+    // Blank for the default endpoint, otherwise an http(s) URL, returned ending in '/'
+    public static String ParseApiEndpoint(String value) throws Exception {
+        value = value.trim();
+        if (value.length() == 0) {
+            return null;
+        }
+        try {
+            URL url = new URL(value);
+            if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+                throw new Exception();
+            }
+        } catch (Exception e) {
+            throw new Exception("Must be an http or https URL");
+        }
+        return value.endsWith("/") ? value : value + "/";
+    }
+
+    public static Integer ParseApiBurstSize(String value) throws Exception {
+        Integer burst = Utils.ParseOptionalNonNegative(value);
+        if (burst != null && burst < 1) {
+            throw new Exception("Value must be 1 or larger");
+        }
+        return burst;
+    }
+
 }
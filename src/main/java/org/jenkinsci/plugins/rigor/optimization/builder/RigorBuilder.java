@@ -16,7 +16,10 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiClient;
 import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHelper;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorRateLimiter;
 import org.jenkinsci.plugins.rigor.optimization.credentials.RigorCredentials;
 import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
 import org.kohsuke.stapler.AncestorInPath;
@@ -27,7 +30,9 @@ import org.kohsuke.stapler.StaplerRequest;
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -40,7 +45,7 @@ public class RigorBuilder extends Builder {
     public RigorBuilder(String credentialsId, String performanceTestIds, Boolean failOnSnapshotError,
             Boolean failOnResults, String performanceScore, String criticalNumber, String foundDefectIds,
             Boolean enforcePerformanceBudgets, String totalContentSize, String totalFoundItems,
-            String testTimeoutSeconds) {
+            String testTimeoutSeconds, Boolean collectResultsLater, Boolean failFast) {
 
         this.settings = new BuilderSettings();
 
@@ -53,6 +58,8 @@ public class RigorBuilder extends Builder {
         settings.InputFoundDefectIds = foundDefectIds;
         settings.EnforcePerformanceBudgets = enforcePerformanceBudgets;
         settings.InputTestTimeoutSeconds = testTimeoutSeconds;
+        settings.CollectResultsLater = collectResultsLater;
+        settings.FailFast = failFast;
     }
 
     // Accessors to allow persistence of values set from config.jelly
@@ -92,16 +99,29 @@ public class RigorBuilder extends Builder {
         return settings.InputTestTimeoutSeconds;
     }
 
+    public boolean getCollectResultsLater() {
+        return Boolean.TRUE.equals(settings.CollectResultsLater);
+    }
+
+    public boolean getFailFast() {
+        return Boolean.TRUE.equals(settings.FailFast);
+    }
+
     // Called when a build is run
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
             throws InterruptedException, IOException {
         PrintStream logger = listener.getLogger();
+
+        // Work on this build's own copy, concurrent builds of the job share this builder
+        BuilderSettings settings = this.settings.Copy();
         try {
             // Fail the build if any configuration parse errors
-            if (!this.settings.ParseSettings(logger)) {
+            if (!settings.ParseSettings(logger)) {
                 return false;
             }
+            settings.MaxConcurrentRequests = getDescriptor().getMaxConcurrentRequestsParsed();
+            settings.ConsolidatedDefectFetch = getDescriptor().isConsolidatedDefectFetch();
 
             // Info about the build, if available
             Integer buildNumber = null;
@@ -115,7 +135,16 @@ public class RigorBuilder extends Builder {
 
             // Init our API connector
             String apiKey = getDescriptor().getRigorCredentials(settings.CredentialsId);
-            RigorApiHelper helper = new RigorApiHelper(apiKey, this.settings, logger, buildNumber, projectName);
+            RigorApiHelper helper = new RigorApiHelper(apiKey, settings, logger, buildNumber, projectName);
+
+            // Leave the waiting to the post-build recorder if asked, so scanning overlaps
+            // the rest of the build
+            if (getCollectResultsLater() && settings.InputFailOnResults && settings.DoPolling) {
+                if (build.getProject().getPublishersList().get(RigorResultRecorder.class) != null) {
+                    return startForRecorder(build, helper, settings, logger);
+                }
+                Utils.LogMsg(logger, "No 'Collect Rigor Optimization results' post-build action configured, waiting for results now.");
+            }
 
             // Start the pending tests, optionally waiting for completion.
             // Returns true when build can continue successfully, or false to fail the build
@@ -127,6 +156,24 @@ public class RigorBuilder extends Builder {
         }
     }
 
+    // Start the tests and record them on the build, with this build's settings, for
+    // RigorResultRecorder to collect
+    protected boolean startForRecorder(AbstractBuild<?, ?> build, RigorApiHelper helper, BuilderSettings settings,
+            PrintStream logger) {
+        ArrayList<RigorApiSnapshotResult> snapshotsStarted;
+        try {
+            snapshotsStarted = helper.StartBuildTests();
+        } catch (Exception e) {
+            return helper.SnapshotError("Failed to start performance tests: " + e.getMessage());
+        }
+
+        build.addAction(new RigorSnapshotsAction(UUID.randomUUID().toString(), settings.CredentialsId,
+                snapshotsStarted, settings));
+        Utils.LogMsg(logger, "Continuing build, results for " + snapshotsStarted.size()
+                + " snapshot(s) will be collected after the build steps.");
+        return true;
+    }
+
     // Overridden for better type safety.
     @Override
     public DescriptorImpl getDescriptor() {
@@ -142,12 +189,21 @@ public class RigorBuilder extends Builder {
                // point.
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
 
+        // Global configuration
+        private String maxConcurrentRequests;
+        private String apiRequestsPerSecond;
+        private String apiBurstSize;
+        private boolean consolidatedDefectFetch;
+        private String apiEndpoint;
+
         /**
          * In order to load the persisted global configuration, you have to call load()
          * in the constructor.
          */
         public DescriptorImpl() {
             load();
+            applyRateLimit();
+            applyApiEndpoint();
         }
 
         /**
@@ -206,6 +262,46 @@ public class RigorBuilder extends Builder {
             }
         }
 
+        // Validate max concurrent requests (global config)
+        public FormValidation doCheckMaxConcurrentRequests(@QueryParameter String value) throws IOException {
+            try {
+                BuilderSettings.ParseMaxConcurrentRequests(value);
+                return FormValidation.ok();
+            } catch (Exception e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        // Validate API rate limit (global config)
+        public FormValidation doCheckApiRequestsPerSecond(@QueryParameter String value) throws IOException {
+            try {
+                BuilderSettings.ParseApiRequestsPerSecond(value);
+                return FormValidation.ok();
+            } catch (Exception e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        // Validate API burst size (global config)
+        public FormValidation doCheckApiBurstSize(@QueryParameter String value) throws IOException {
+            try {
+                BuilderSettings.ParseApiBurstSize(value);
+                return FormValidation.ok();
+            } catch (Exception e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        // Validate API endpoint (global config)
+        public FormValidation doCheckApiEndpoint(@QueryParameter String value) throws IOException {
+            try {
+                BuilderSettings.ParseApiEndpoint(value);
+                return FormValidation.ok();
+            } catch (Exception e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             // Indicates that this builder can be used with all kinds of project types
             return true;
@@ -219,12 +315,86 @@ public class RigorBuilder extends Builder {
 
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
+            this.maxConcurrentRequests = formData.optString("maxConcurrentRequests");
+            this.apiRequestsPerSecond = formData.optString("apiRequestsPerSecond");
+            this.apiBurstSize = formData.optString("apiBurstSize");
+            this.consolidatedDefectFetch = formData.optBoolean("consolidatedDefectFetch");
+            this.apiEndpoint = formData.optString("apiEndpoint");
             save();
+            applyRateLimit();
+            applyApiEndpoint();
             return super.configure(req, formData);
         }
 
+        // Accessors for global config, raw values used by global.jelly
+        public String getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public int getMaxConcurrentRequestsParsed() {
+            try {
+                Integer limit = BuilderSettings.ParseMaxConcurrentRequests(maxConcurrentRequests == null ? "" : maxConcurrentRequests);
+                if (limit != null) {
+                    return limit;
+                }
+            } catch (Exception e) {
+                // fall through to default
+            }
+            return BuilderSettings.DefaultMaxConcurrentRequests;
+        }
+
+        public String getApiRequestsPerSecond() {
+            return apiRequestsPerSecond;
+        }
+
+        public String getApiBurstSize() {
+            return apiBurstSize;
+        }
+
+        public boolean isConsolidatedDefectFetch() {
+            return consolidatedDefectFetch;
+        }
+
+        public String getApiEndpoint() {
+            return apiEndpoint;
+        }
+
+        // Point the API client at the configured endpoint, the default if unset or invalid
+        protected void applyApiEndpoint() {
+            String endpoint = null;
+            try {
+                endpoint = BuilderSettings.ParseApiEndpoint(apiEndpoint == null ? "" : apiEndpoint);
+            } catch (Exception e) {
+                // keep default
+            }
+            RigorApiClient.SetApiEndpoint(endpoint);
+        }
+
+        // Push the configured rate limit to the shared limiter, defaults for anything unset or invalid
+        protected void applyRateLimit() {
+            int rate = RigorRateLimiter.DefaultRequestsPerSecond;
+            int burst = RigorRateLimiter.DefaultBurstSize;
+            try {
+                Integer parsed = BuilderSettings.ParseApiRequestsPerSecond(apiRequestsPerSecond == null ? "" : apiRequestsPerSecond);
+                if (parsed != null) {
+                    rate = parsed;
+                }
+            } catch (Exception e) {
+                // keep default
+            }
+            try {
+                Integer parsed = BuilderSettings.ParseApiBurstSize(apiBurstSize == null ? "" : apiBurstSize);
+                if (parsed != null) {
+                    burst = parsed;
+                }
+            } catch (Exception e) {
+                // keep default
+            }
+            RigorRateLimiter.Get().Configure(rate, burst);
+        }
+
         // Get API token from config
-        private String getRigorCredentials(String credentialsId) {
+        public String getRigorCredentials(String credentialsId) {
             List<RigorCredentials> rigorCredentialsList = CredentialsProvider.lookupCredentials(RigorCredentials.class,
                     Jenkins.getInstance(), ACL.SYSTEM);
             RigorCredentials rigorCredentials = CredentialsMatchers.firstOrNull(rigorCredentialsList,
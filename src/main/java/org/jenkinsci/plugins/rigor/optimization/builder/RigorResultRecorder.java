@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.rigor.optimization.builder;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Publisher;
+import hudson.tasks.Recorder;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHelper;
+import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Post-build half of a split Rigor Optimization run. {@link RigorBuilder} with "collect results
+ * later" set starts the snapshots and records them on the build; this waits for them to complete
+ * and passes or fails the build on the results, so scanning overlaps the build steps in between.
+ */
+public class RigorResultRecorder extends Recorder {
+
+    @DataBoundConstructor
+    public RigorResultRecorder() {
+    }
+
+    @Override
+    public BuildStepMonitor getRequiredMonitorService() {
+        return BuildStepMonitor.NONE;
+    }
+
+    // Called after the build steps have run
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        PrintStream logger = listener.getLogger();
+
+        // Only snapshots recorded with settings are ours to collect, the Pipeline step handles its own
+        List<RigorSnapshotsAction> actions = build.getActions(RigorSnapshotsAction.class);
+        boolean passed = true;
+        boolean collected = false;
+        for (RigorSnapshotsAction action : actions) {
+            BuilderSettings settings = action.getSettings();
+            if (settings == null) {
+                continue;
+            }
+            collected = true;
+
+            try {
+                String apiKey = getBuilderDescriptor().getRigorCredentials(action.getCredentialsId());
+                RigorApiHelper helper = new RigorApiHelper(apiKey, settings, logger, build.number,
+                        build.getProject().getName());
+
+                logger.println("");
+                logger.println("####################################################");
+                logger.println("Collecting Rigor Optimization performance results");
+                logger.println("");
+                if (!helper.CollectBuildTests(action.getSnapshots())) {
+                    passed = false;
+                }
+            } catch (Exception e) {
+                // Fail the build if we hit a problem
+                Utils.LogMsg(logger, "An error occurred: " + e.getMessage());
+                passed = false;
+            }
+        }
+
+        if (!collected) {
+            Utils.LogMsg(logger, "No Rigor Optimization snapshots were left to collect in this build.");
+        }
+        return passed;
+    }
+
+    protected static RigorBuilder.DescriptorImpl getBuilderDescriptor() {
+        return Jenkins.getInstance().getDescriptorByType(RigorBuilder.DescriptorImpl.class);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            return true;
+        }
+
+        public String getDisplayName() {
+            return "Collect Rigor Optimization results";
+        }
+    }
+}
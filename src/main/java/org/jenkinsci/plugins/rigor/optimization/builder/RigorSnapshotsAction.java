@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.rigor.optimization.builder;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshots started by a Rigor Optimization step, recorded on the build so their results
+ * can be picked up later on (by a later step, or by the same step after a restart).
+ */
+public class RigorSnapshotsAction extends InvisibleAction {
+    private final String id;
+    private final String credentialsId;
+    private final ArrayList<RigorApiSnapshotResult> snapshots;
+    private final BuilderSettings settings;
+
+    public RigorSnapshotsAction(String id, String credentialsId, List<RigorApiSnapshotResult> snapshots) {
+        this(id, credentialsId, snapshots, null);
+    }
+
+    // With the settings to analyze them by, for snapshots left to the post-build recorder
+    public RigorSnapshotsAction(String id, String credentialsId, List<RigorApiSnapshotResult> snapshots,
+            BuilderSettings settings) {
+        this.id = id;
+        this.credentialsId = credentialsId;
+        this.snapshots = new ArrayList<RigorApiSnapshotResult>(snapshots);
+        this.settings = settings;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public ArrayList<RigorApiSnapshotResult> getSnapshots() {
+        return new ArrayList<RigorApiSnapshotResult>(snapshots);
+    }
+
+    // Settings for the post-build recorder, or null if the starting step collects its own results
+    public BuilderSettings getSettings() {
+        return settings;
+    }
+
+    // Find the snapshots recorded on a build under the given id, or null
+    public static RigorSnapshotsAction find(Run<?, ?> run, String id) {
+        for (RigorSnapshotsAction action : run.getActions(RigorSnapshotsAction.class)) {
+            if (action.getId().equals(id)) {
+                return action;
+            }
+        }
+        return null;
+    }
+}
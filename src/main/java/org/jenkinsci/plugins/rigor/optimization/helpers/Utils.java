@@ -2,6 +2,9 @@ package org.jenkinsci.plugins.rigor.optimization.helpers;
 
 
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
@@ -93,6 +96,26 @@ public class Utils {
         }
     }
 
+    // Short, stable hash of a secret value, safe to use as a map key or show in logs.
+    public static String Fingerprint(String secret) {
+        if(secret==null) {
+            return "none";
+        }
+        try {
+            MessageDigest digest=MessageDigest.getInstance("SHA-256");
+            byte[] hash=digest.digest(secret.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex=new StringBuilder();
+            for(int i=0;i<8;++i) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static String Truncate(String v, int length) {
         return v.substring(0, Math.min(v.length(), length));
 
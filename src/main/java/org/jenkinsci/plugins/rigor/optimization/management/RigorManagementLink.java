@@ -0,0 +1,63 @@
+package org.jenkinsci.plugins.rigor.optimization.management;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import org.apache.http.pool.PoolStats;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiClient;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHttpTransport;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorCircuitBreaker;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorRateLimiter;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorSnapshotWatcher;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorTestCache;
+
+/**
+ * "Manage Jenkins" page showing the state of the shared Rigor Optimization API transport.
+ */
+@Extension
+public class RigorManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Rigor Optimization";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "rigor-optimization";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Connection pool, snapshot watcher, rate limit and circuit breaker status for the Rigor Optimization API.";
+    }
+
+    // Used by index.jelly
+    public PoolStats getConnectionPoolStats() {
+        return RigorApiHttpTransport.Get().getPoolStats();
+    }
+
+    public long getCoalescedGetCount() {
+        return RigorApiClient.getCoalescedGetCount();
+    }
+
+    public int getCachedTestCount() {
+        return RigorTestCache.Get().getSize();
+    }
+
+    public RigorSnapshotWatcher getSnapshotWatcher() {
+        return RigorSnapshotWatcher.Get();
+    }
+
+    public RigorRateLimiter getRateLimiter() {
+        return RigorRateLimiter.Get();
+    }
+
+    public RigorCircuitBreaker getCircuitBreaker() {
+        return RigorCircuitBreaker.Get();
+    }
+}
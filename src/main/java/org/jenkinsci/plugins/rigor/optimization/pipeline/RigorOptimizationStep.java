@@ -0,0 +1,165 @@
+package org.jenkinsci.plugins.rigor.optimization.pipeline;
+
+import hudson.Extension;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+import org.jenkinsci.plugins.rigor.optimization.builder.RigorBuilder;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Pipeline step running Rigor Optimization performance tests. Same settings as {@link RigorBuilder},
+ * but waiting for results is asynchronous: no thread is held while the scans run, and the wait
+ * picks back up if Jenkins restarts. The step needs no workspace, so call it outside {@code node}
+ * to free the executor as well; inside {@code node} the enclosing block keeps its executor.
+ *
+ * <pre>
+ * rigorOptimization credentialsId: 'rigor', performanceTestIds: '123,456',
+ *                   failOnResults: true, performanceScore: '80'
+ * </pre>
+ */
+public class RigorOptimizationStep extends AbstractStepImpl {
+    private final String credentialsId;
+    private final String performanceTestIds;
+    private boolean failOnSnapshotError = true;
+    private boolean failOnResults = false;
+    private String performanceScore = "";
+    private String criticalNumber = "";
+    private String foundDefectIds = "";
+    private boolean enforcePerformanceBudgets = false;
+    private String testTimeoutSeconds = "";
+    private boolean failFast = false;
+
+    @DataBoundConstructor
+    public RigorOptimizationStep(String credentialsId, String performanceTestIds) {
+        this.credentialsId = credentialsId;
+        this.performanceTestIds = performanceTestIds;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public String getPerformanceTestIds() {
+        return performanceTestIds;
+    }
+
+    public boolean getFailOnSnapshotError() {
+        return failOnSnapshotError;
+    }
+
+    @DataBoundSetter
+    public void setFailOnSnapshotError(boolean failOnSnapshotError) {
+        this.failOnSnapshotError = failOnSnapshotError;
+    }
+
+    public boolean getFailOnResults() {
+        return failOnResults;
+    }
+
+    @DataBoundSetter
+    public void setFailOnResults(boolean failOnResults) {
+        this.failOnResults = failOnResults;
+    }
+
+    public String getPerformanceScore() {
+        return performanceScore;
+    }
+
+    @DataBoundSetter
+    public void setPerformanceScore(String performanceScore) {
+        this.performanceScore = performanceScore == null ? "" : performanceScore;
+    }
+
+    public String getCriticalNumber() {
+        return criticalNumber;
+    }
+
+    @DataBoundSetter
+    public void setCriticalNumber(String criticalNumber) {
+        this.criticalNumber = criticalNumber == null ? "" : criticalNumber;
+    }
+
+    public String getFoundDefectIds() {
+        return foundDefectIds;
+    }
+
+    @DataBoundSetter
+    public void setFoundDefectIds(String foundDefectIds) {
+        this.foundDefectIds = foundDefectIds == null ? "" : foundDefectIds;
+    }
+
+    public boolean getEnforcePerformanceBudgets() {
+        return enforcePerformanceBudgets;
+    }
+
+    @DataBoundSetter
+    public void setEnforcePerformanceBudgets(boolean enforcePerformanceBudgets) {
+        this.enforcePerformanceBudgets = enforcePerformanceBudgets;
+    }
+
+    public String getTestTimeoutSeconds() {
+        return testTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setTestTimeoutSeconds(String testTimeoutSeconds) {
+        this.testTimeoutSeconds = testTimeoutSeconds == null ? "" : testTimeoutSeconds;
+    }
+
+    public boolean getFailFast() {
+        return failFast;
+    }
+
+    @DataBoundSetter
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    // Unparsed settings for this step, same shape as the freestyle builder's
+    BuilderSettings toSettings() {
+        BuilderSettings settings = new BuilderSettings();
+        settings.CredentialsId = credentialsId;
+        settings.InputPerformanceTestIds = performanceTestIds == null ? "" : performanceTestIds;
+        settings.FailBuildOnSnapshotError = failOnSnapshotError;
+        settings.InputFailOnResults = failOnResults;
+        settings.InputPerformanceScore = performanceScore;
+        settings.InputCriticalNumber = criticalNumber;
+        settings.InputFoundDefectIds = foundDefectIds;
+        settings.EnforcePerformanceBudgets = enforcePerformanceBudgets;
+        settings.InputTestTimeoutSeconds = testTimeoutSeconds;
+        settings.FailFast = failFast;
+        return settings;
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(RigorOptimizationStepExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "rigorOptimization";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Test website performance using Rigor Optimization";
+        }
+
+        // Same credentials choices as the freestyle builder
+        @SuppressWarnings("unused") // used by stapler
+        public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Jenkins context,
+                @QueryParameter String remoteBase) {
+            return Jenkins.getInstance().getDescriptorByType(RigorBuilder.DescriptorImpl.class)
+                    .doFillCredentialsIdItems(context, remoteBase);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.jenkinsci.plugins.rigor.optimization.pipeline;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiHelper;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorApiSnapshotResult;
+import org.jenkinsci.plugins.rigor.optimization.api.RigorMetrics;
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+import org.jenkinsci.plugins.rigor.optimization.builder.RigorBuilder;
+import org.jenkinsci.plugins.rigor.optimization.builder.RigorSnapshotsAction;
+import org.jenkinsci.plugins.rigor.optimization.helpers.Utils;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link RigorOptimizationStep} without blocking. Snapshots are started on a background
+ * thread and recorded on the build, then handed to the shared snapshot watcher; the step
+ * completes from the watcher's callback. After a restart the recorded snapshots are watched again.
+ */
+public class RigorOptimizationStepExecution extends AbstractStepExecutionImpl {
+    private static final long serialVersionUID = 1L;
+
+    @Inject(optional = true)
+    private transient RigorOptimizationStep step;
+
+    // Persisted with the program
+    private String id;
+    private String credentialsId;
+    private BuilderSettings settings;
+    private long timeoutTimeMS;
+
+    private transient volatile RigorApiHelper starting;
+    private transient volatile List<ListenableFuture<RigorApiSnapshotResult>> watches;
+    private transient volatile ScheduledFuture<?> timeout;
+    private transient volatile boolean stopped;
+    private transient AtomicBoolean done = new AtomicBoolean();
+
+    @Override
+    public boolean start() throws Exception {
+        this.id = UUID.randomUUID().toString();
+        this.credentialsId = step.getCredentialsId();
+        this.settings = step.toSettings();
+
+        // Fail the step if any configuration parse errors
+        if (!this.settings.ParseSettings(getContext().get(TaskListener.class).getLogger())) {
+            throw new AbortException("Invalid Rigor Optimization step configuration.");
+        }
+        this.settings.MaxConcurrentRequests = getBuilderDescriptor().getMaxConcurrentRequestsParsed();
+        this.settings.ConsolidatedDefectFetch = getBuilderDescriptor().isConsolidatedDefectFetch();
+        this.timeoutTimeMS = System.currentTimeMillis() + (this.settings.TestTimeoutSecondsParsed * 1000L);
+
+        // Creating snapshots makes blocking calls, keep them off the CPS thread
+        Computer.threadPoolForRemoting.submit(new Runnable() {
+            @Override
+            public void run() {
+                startSnapshots();
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+        this.stopped = true;
+        RigorApiHelper current = this.starting;
+        if (current != null) {
+            current.StopStarting();
+        }
+        cancelWatches();
+        getContext().onFailure(cause);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        this.done = new AtomicBoolean();
+        Computer.threadPoolForRemoting.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RigorApiHelper helper = newHelper();
+                    RigorSnapshotsAction action = RigorSnapshotsAction.find(getContext().get(Run.class), id);
+                    if (action == null) {
+                        finish(helper.SnapshotError("Jenkins restarted before the performance tests were started."));
+                        return;
+                    }
+                    Utils.LogMsg(getLogger(), "Resuming wait for " + action.getSnapshots().size() + " snapshot(s) after restart");
+                    waitForSnapshots(helper, action.getSnapshots());
+                } catch (Exception e) {
+                    getContext().onFailure(e);
+                }
+            }
+        });
+    }
+
+    // Start the snapshots, then either finish or start waiting for them. If the step is stopped
+    // meanwhile, no more snapshots are started and nothing is waited for.
+    protected void startSnapshots() {
+        try {
+            RigorApiHelper helper = newHelper();
+            this.starting = helper;
+            if (this.stopped) {
+                return;
+            }
+
+            ArrayList<RigorApiSnapshotResult> started;
+            try {
+                started = helper.StartBuildTests();
+            } catch (Exception e) {
+                finish(helper.SnapshotError("Failed to start performance tests: " + e.getMessage()));
+                return;
+            } finally {
+                this.starting = null;
+            }
+            if (this.stopped) {
+                return;
+            }
+
+            // Should we wait around?
+            if (!helper.WaitForResults()) {
+                finish(true);
+                return;
+            }
+
+            // Record them on the build so we can pick back up after a restart
+            Run<?, ?> run = getContext().get(Run.class);
+            run.addAction(new RigorSnapshotsAction(this.id, this.credentialsId, started));
+            run.save();
+
+            waitForSnapshots(helper, started);
+        } catch (Exception e) {
+            getContext().onFailure(e);
+        }
+    }
+
+    // Have the watcher tell us as each snapshot completes, analyzing each one as it comes in.
+    // Whichever callback decides the outcome claims the step before cancelling the other watches,
+    // so their cancellations are ignored rather than taken for a timeout.
+    protected void waitForSnapshots(final RigorApiHelper helper, final List<RigorApiSnapshotResult> snapshots) {
+        Utils.LogMsg(getLogger(), "Waiting for completion of " + snapshots.size() + " snapshot(s), timeout " + this.settings.TestTimeoutSecondsParsed + " seconds");
+
+        final AtomicInteger remaining = new AtomicInteger(snapshots.size());
+        this.watches = helper.WatchSnapshots(snapshots);
+
+        // Stopped while the watches were being set up, stop() may have missed them
+        if (this.stopped) {
+            cancelWatches();
+            return;
+        }
+
+        // Give up at the timeout. Only this reports a timeout
+        this.timeout = Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!claim()) {
+                    return;
+                }
+                cancelWatches();
+                RigorMetrics.Get().RecordWaitTimeout();
+                complete(helper.SnapshotError("An error occurred waiting for snapshot(s) to complete: Timeout exceeded, aborting."));
+            }
+        }, Math.max(0, this.timeoutTimeMS - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+        for (ListenableFuture<RigorApiSnapshotResult> watch : this.watches) {
+            Futures.addCallback(watch, new FutureCallback<RigorApiSnapshotResult>() {
+                @Override
+                public void onSuccess(RigorApiSnapshotResult result) {
+                    if (done.get()) {
+                        return;
+                    }
+                    boolean passed;
+                    try {
+                        passed = helper.AnalyzeSnapshot(result);
+                    } catch (Exception e) {
+                        if (claim()) {
+                            cancelWatches();
+                            complete(helper.SnapshotError("An error occurred processing snapshot results: " + e.getMessage()));
+                        }
+                        return;
+                    }
+
+                    int left = remaining.decrementAndGet();
+                    if (!passed && left > 0 && helper.FailFast()) {
+                        // The build has failed whatever the rest show, so don't hold it up
+                        if (claim()) {
+                            cancelWatches();
+                            helper.StopWaiting(snapshots);
+                            complete(helper.FinishBuildTests());
+                        }
+                    } else if (left == 0) {
+                        if (claim()) {
+                            Utils.LogMsg(getLogger(), "All snapshots complete");
+                            complete(helper.FinishBuildTests());
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    // Cancelled by us, once the outcome was decided or the step stopped
+                    if (t instanceof CancellationException || !claim()) {
+                        return;
+                    }
+                    cancelWatches();
+                    complete(helper.SnapshotError("An error occurred waiting for snapshot(s) to complete: " + t.getMessage()));
+                }
+            }, Computer.threadPoolForRemoting);
+        }
+    }
+
+    // Complete the step, failing the build if the tests failed
+    protected void finish(boolean passed) {
+        if (claim()) {
+            complete(passed);
+        }
+    }
+
+    // Take the right to complete the step, false if it has already been completed or stopped
+    protected boolean claim() {
+        return !this.stopped && this.done.compareAndSet(false, true);
+    }
+
+    // Complete the step once claimed
+    protected void complete(boolean passed) {
+        ScheduledFuture<?> current = this.timeout;
+        if (current != null) {
+            current.cancel(false);
+        }
+        if (passed) {
+            getContext().onSuccess(null);
+        } else {
+            getContext().onFailure(new AbortException("Rigor Optimization performance tests failed."));
+        }
+    }
+
+    protected void cancelWatches() {
+        List<ListenableFuture<RigorApiSnapshotResult>> current = this.watches;
+        if (current != null) {
+            for (ListenableFuture<RigorApiSnapshotResult> watch : current) {
+                watch.cancel(false);
+            }
+        }
+    }
+
+    protected RigorApiHelper newHelper() throws Exception {
+        String apiKey = getBuilderDescriptor().getRigorCredentials(this.credentialsId);
+        if (apiKey == null) {
+            throw new AbortException("Rigor Optimization credentials '" + this.credentialsId + "' not found.");
+        }
+        Run<?, ?> run = getContext().get(Run.class);
+        return new RigorApiHelper(apiKey, this.settings, getLogger(), run.getNumber(), run.getParent().getName());
+    }
+
+    protected PrintStream getLogger() {
+        try {
+            return getContext().get(TaskListener.class).getLogger();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    protected static RigorBuilder.DescriptorImpl getBuilderDescriptor() {
+        return Jenkins.getInstance().getDescriptorByType(RigorBuilder.DescriptorImpl.class);
+    }
+}
@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RigorAdaptivePollStrategyTest {
+    // Enough samples to see the jitter at both ends
+    static final int Samples=500;
+
+    @Test
+    public void unknownTestsFallBackToTheFixedCadence() {
+        RigorAdaptivePollStrategy strategy=new RigorAdaptivePollStrategy(new RigorScanHistory(null));
+        for(int i=0;i<Samples;++i) {
+            assertJittered(10000,strategy.FirstPollDelayMS(snapshots(1)));
+            assertJittered(20000,strategy.NextPollDelayMS(snapshots(1),150000,5));
+        }
+    }
+
+    @Test
+    public void oneUnknownTestMeansFallBack() {
+        RigorAdaptivePollStrategy strategy=strategy(1,600000L);
+        for(int i=0;i<Samples;++i) {
+            assertJittered(10000,strategy.FirstPollDelayMS(snapshots(1,2)));
+        }
+    }
+
+    @Test
+    public void firstPollIsJustBeforeTheEarliestExpectedCompletion() {
+        RigorAdaptivePollStrategy strategy=strategy(1,100000L);
+        strategy.history.RecordDuration(2,60000L);
+        for(int i=0;i<Samples;++i) {
+            assertJittered(Math.round(60000*RigorAdaptivePollStrategy.EarlyFraction),strategy.FirstPollDelayMS(snapshots(1,2)));
+        }
+    }
+
+    @Test
+    public void firstPollIsNeverSoonerThanTheMinimum() {
+        RigorAdaptivePollStrategy strategy=strategy(1,1000L);
+        for(int i=0;i<Samples;++i) {
+            assertJittered(RigorAdaptivePollStrategy.MinDelayMS,strategy.FirstPollDelayMS(snapshots(1)));
+        }
+    }
+
+    @Test
+    public void waitsUntilDueWhenNotDueYet() {
+        RigorAdaptivePollStrategy strategy=strategy(1,100000L);
+        long due=Math.round(100000*RigorAdaptivePollStrategy.EarlyFraction);
+        for(int i=0;i<Samples;++i) {
+            assertJittered(due-20000,strategy.NextPollDelayMS(snapshots(1),20000,1));
+        }
+    }
+
+    @Test
+    public void overdueBacksOffWithinBounds() {
+        RigorAdaptivePollStrategy strategy=strategy(1,100000L);
+        for(int i=0;i<Samples;++i) {
+            // Just due or a little late, poll at the minimum
+            assertJittered(RigorAdaptivePollStrategy.MinDelayMS,strategy.NextPollDelayMS(snapshots(1),90000,2));
+            assertJittered(RigorAdaptivePollStrategy.MinDelayMS,strategy.NextPollDelayMS(snapshots(1),104000,3));
+
+            // Later, in proportion to how late
+            assertJittered(20000,strategy.NextPollDelayMS(snapshots(1),140000,4));
+
+            // Very late, capped
+            assertJittered(RigorAdaptivePollStrategy.MaxOverdueDelayMS,strategy.NextPollDelayMS(snapshots(1),1000000,5));
+        }
+    }
+
+    @Test
+    public void delaysStayWithinTheOverallBounds() {
+        RigorAdaptivePollStrategy strategy=strategy(1,45000L);
+        long low=Math.round(RigorAdaptivePollStrategy.MinDelayMS*(1-RigorAdaptivePollStrategy.JitterFraction));
+        for(long elapsed=0;elapsed<=600000;elapsed+=1000) {
+            long delay=strategy.NextPollDelayMS(snapshots(1),elapsed,1);
+            assertTrue("elapsed " + elapsed + " delay " + delay,delay>=low);
+            if(elapsed>=45000) {
+                long high=Math.round(RigorAdaptivePollStrategy.MaxOverdueDelayMS*(1+RigorAdaptivePollStrategy.JitterFraction));
+                assertTrue("elapsed " + elapsed + " delay " + delay,delay<=high);
+            }
+        }
+    }
+
+    @Test
+    public void completionsAreRecorded() {
+        RigorAdaptivePollStrategy strategy=new RigorAdaptivePollStrategy(new RigorScanHistory(null));
+        strategy.RecordCompletion(7,30000L);
+        assertEquals(Long.valueOf(30000L),strategy.history.ExpectedDurationMS(7));
+
+        strategy.RecordCompletion(7,40000L);
+        assertEquals(Long.valueOf(Math.round(RigorScanHistory.SmoothingFactor*40000 + (1-RigorScanHistory.SmoothingFactor)*30000)),
+                strategy.history.ExpectedDurationMS(7));
+    }
+
+    @Test
+    public void implausibleDurationsAreIgnored() {
+        RigorScanHistory history=new RigorScanHistory(null);
+        history.RecordDuration(7,0L);
+        history.RecordDuration(7,-5000L);
+        history.RecordDuration(7,RigorScanHistory.MaxDurationMS+1);
+        assertEquals(null,history.ExpectedDurationMS(7));
+
+        history.RecordDuration(7,30000L);
+        history.RecordDuration(7,RigorScanHistory.MaxDurationMS*10);
+        assertEquals(Long.valueOf(30000L),history.ExpectedDurationMS(7));
+    }
+
+    static RigorAdaptivePollStrategy strategy(Integer testID, Long expectedMS) {
+        RigorScanHistory history=new RigorScanHistory(null);
+        history.RecordDuration(testID,expectedMS);
+        return new RigorAdaptivePollStrategy(history);
+    }
+
+    static List<RigorApiSnapshotResult> snapshots(Integer... testIDs) {
+        ArrayList<RigorApiSnapshotResult> snapshots=new ArrayList<RigorApiSnapshotResult>();
+        for(Integer testID: testIDs) {
+            RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+            snapshot.test_id=testID;
+            snapshot.snapshot_id=100+testID;
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    static void assertJittered(long expected, long actual) {
+        long low=Math.round(expected*(1-RigorAdaptivePollStrategy.JitterFraction));
+        long high=Math.round(expected*(1+RigorAdaptivePollStrategy.JitterFraction));
+        assertTrue(actual + " not within jitter of " + expected,actual>=low && actual<=high);
+    }
+}
@@ -0,0 +1,235 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RigorApiCodecTest {
+    @Test
+    public void tag() {
+        RigorApiTag tag=roundTrip(tag("build 12","High"),RigorApiTag.class);
+        assertEquals("build 12",tag.name);
+        assertEquals("High",tag.priority);
+
+        // Missing fields keep their defaults, explicit nulls are nulls
+        assertEquals("Medium",RigorApiCodec.FromJson("{\"name\":\"x\"}",RigorApiTag.class).priority);
+        assertNull(RigorApiCodec.FromJson("{\"name\":\"x\",\"priority\":null}",RigorApiTag.class).priority);
+    }
+
+    @Test
+    public void error() {
+        RigorApiError error=new RigorApiError();
+        error.IsError=true;
+        error.IsSuccess=false;
+        error.result="NotFound";
+        error.message="Test not found";
+
+        RigorApiError copy=roundTrip(error,RigorApiError.class);
+        assertTrue(copy.IsError);
+        assertFalse(copy.IsSuccess);
+        assertEquals("NotFound",copy.result);
+        assertEquals("Test not found",copy.message);
+
+        copy=RigorApiCodec.FromJson("{\"IsError\":null,\"message\":null,\"code\":7}",RigorApiError.class);
+        assertFalse(copy.IsError);
+        assertNull(copy.message);
+    }
+
+    @Test
+    public void snapshotResult() {
+        RigorApiSnapshotResult copy=roundTrip(snapshot(12,34),RigorApiSnapshotResult.class);
+        assertSnapshot(copy,12,34);
+
+        // Unknown fields of every shape are skipped
+        copy=RigorApiCodec.FromJson("{\"test_id\":12,\"extra\":{\"a\":[1,{\"b\":null}]},\"list\":[1,2],"
+                + "\"flag\":true,\"snapshot_id\":34,\"zoompf_score\":null}",RigorApiSnapshotResult.class);
+        assertEquals(Integer.valueOf(12),copy.test_id);
+        assertEquals(Integer.valueOf(34),copy.snapshot_id);
+        assertNull(copy.zoompf_score);
+        assertNull(copy.status);
+    }
+
+    @Test
+    public void nullFieldsAreLeftOut() {
+        RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+        snapshot.test_id=1;
+        assertEquals("{\"test_id\":1}",RigorApiCodec.ToJson(snapshot));
+
+        RigorApiTestResult test=new RigorApiTestResult();
+        assertEquals("{}",RigorApiCodec.ToJson(test));
+    }
+
+    @Test
+    public void nullDocument() {
+        assertNull(RigorApiCodec.FromJson("null",RigorApiSnapshotResult.class));
+        assertEquals("null",RigorApiCodec.ToJson(null));
+    }
+
+    @Test
+    public void snapshotResultList() {
+        RigorApiSnapshotResultList list=new RigorApiSnapshotResultList();
+        list.snapshots=new ArrayList<RigorApiSnapshotResult>(Arrays.asList(snapshot(1,2),null,snapshot(3,4)));
+
+        RigorApiSnapshotResultList copy=roundTrip(list,RigorApiSnapshotResultList.class);
+        assertEquals(3,copy.snapshots.size());
+        assertSnapshot(copy.snapshots.get(0),1,2);
+        assertNull(copy.snapshots.get(1));
+        assertSnapshot(copy.snapshots.get(2),3,4);
+
+        assertNull(RigorApiCodec.FromJson("{\"snapshots\":null,\"total\":0}",RigorApiSnapshotResultList.class).snapshots);
+    }
+
+    @Test
+    public void defectResult() {
+        RigorApiDefectResult copy=roundTrip(defect(7,"Critical"),RigorApiDefectResult.class);
+        assertDefect(copy,7,"Critical");
+
+        copy=RigorApiCodec.FromJson("{\"defect_id\":7,\"severity\":null,\"categories\":[\"a\"]}",RigorApiDefectResult.class);
+        assertEquals(Integer.valueOf(7),copy.defect_id);
+        assertNull(copy.severity);
+    }
+
+    @Test
+    public void defectResultList() {
+        RigorApiDefectResultList list=new RigorApiDefectResultList();
+        list.defects=new ArrayList<RigorApiDefectResult>(Arrays.asList(defect(1,"Critical"),defect(2,"Low")));
+
+        RigorApiDefectResultList copy=roundTrip(list,RigorApiDefectResultList.class);
+        assertEquals(2,copy.defects.size());
+        assertDefect(copy.defects.get(0),1,"Critical");
+        assertDefect(copy.defects.get(1),2,"Low");
+
+        copy=RigorApiCodec.FromJson("{\"page\":1,\"defects\":[]}",RigorApiDefectResultList.class);
+        assertTrue(copy.defects.isEmpty());
+    }
+
+    @Test
+    public void testResult() {
+        RigorApiTestResult test=new RigorApiTestResult();
+        test.test_id=5;
+        test.name="Home page";
+        test.url="https://www.example.com/";
+        test.tags=new ArrayList<RigorApiTag>(Arrays.asList(tag("a","Low")));
+
+        RigorApiTestResult copy=roundTrip(test,RigorApiTestResult.class);
+        assertEquals(Integer.valueOf(5),copy.test_id);
+        assertEquals("Home page",copy.name);
+        assertEquals("https://www.example.com/",copy.url);
+        assertEquals(1,copy.tags.size());
+        assertEquals("a",copy.tags.get(0).name);
+        assertEquals("Low",copy.tags.get(0).priority);
+
+        copy=RigorApiCodec.FromJson("{\"test_id\":5,\"tags\":null,\"settings\":{\"x\":1}}",RigorApiTestResult.class);
+        assertNull(copy.tags);
+    }
+
+    @Test
+    public void testResultList() {
+        RigorApiTestResult test=new RigorApiTestResult();
+        test.test_id=5;
+        RigorApiTestResultList list=new RigorApiTestResultList();
+        list.tests=new ArrayList<RigorApiTestResult>(Arrays.asList(test));
+
+        RigorApiTestResultList copy=roundTrip(list,RigorApiTestResultList.class);
+        assertEquals(1,copy.tests.size());
+        assertEquals(Integer.valueOf(5),copy.tests.get(0).test_id);
+        assertNull(copy.tests.get(0).tags);
+    }
+
+    @Test
+    public void snapshotCreate() {
+        RigorApiSnapshotCreate payload=new RigorApiSnapshotCreate();
+        payload.tags.add(tag("build 12","Medium"));
+
+        RigorApiSnapshotCreate copy=roundTrip(payload,RigorApiSnapshotCreate.class);
+        assertEquals(1,copy.tags.size());
+        assertEquals("build 12",copy.tags.get(0).name);
+
+        assertEquals("{\"tags\":[]}",RigorApiCodec.ToJson(new RigorApiSnapshotCreate()));
+    }
+
+    @Test
+    public void snapshotUpdate() {
+        RigorApiSnapshotUpdate payload=new RigorApiSnapshotUpdate();
+        payload.snapshot_ids.add(34);
+        payload.snapshot_ids.add(35);
+        payload.tags.add(tag("passed","Low"));
+
+        RigorApiSnapshotUpdate copy=roundTrip(payload,RigorApiSnapshotUpdate.class);
+        assertEquals("AddTags",copy.tag_update);
+        assertEquals(Arrays.asList(34,35),copy.snapshot_ids);
+        assertEquals("passed",copy.tags.get(0).name);
+
+        payload.snapshot_ids=null;
+        payload.tag_update=null;
+        assertEquals("{\"tags\":[{\"name\":\"passed\",\"priority\":\"Low\"}]}",RigorApiCodec.ToJson(payload));
+    }
+
+    @Test
+    public void testUpdate() {
+        RigorApiTestUpdate payload=new RigorApiTestUpdate();
+        payload.tags.add(tag("failed","High"));
+
+        RigorApiTestUpdate copy=roundTrip(payload,RigorApiTestUpdate.class);
+        assertEquals("AddTags",copy.tag_update);
+        assertEquals("failed",copy.tags.get(0).name);
+        assertEquals("High",copy.tags.get(0).priority);
+
+        copy=RigorApiCodec.FromJson("{\"tag_update\":null,\"unknown\":[[]]}",RigorApiTestUpdate.class);
+        assertNull(copy.tag_update);
+        assertTrue(copy.tags.isEmpty());
+    }
+
+    static <T> T roundTrip(T payload, Class<T> type) {
+        return RigorApiCodec.FromJson(RigorApiCodec.ToJson(payload),type);
+    }
+
+    static RigorApiTag tag(String name, String priority) {
+        RigorApiTag tag=new RigorApiTag();
+        tag.name=name;
+        tag.priority=priority;
+        return tag;
+    }
+
+    static RigorApiSnapshotResult snapshot(int testID, int snapshotID) {
+        RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+        snapshot.test_id=testID;
+        snapshot.snapshot_id=snapshotID;
+        snapshot.status="Complete";
+        snapshot.snapshot_url_guest="https://optimization.example.com/snapshots/" + snapshotID;
+        snapshot.zoompf_score=87;
+        snapshot.defect_count_critical_1pc=3;
+        return snapshot;
+    }
+
+    static void assertSnapshot(RigorApiSnapshotResult snapshot, int testID, int snapshotID) {
+        assertEquals(Integer.valueOf(testID),snapshot.test_id);
+        assertEquals(Integer.valueOf(snapshotID),snapshot.snapshot_id);
+        assertEquals("Complete",snapshot.status);
+        assertEquals("https://optimization.example.com/snapshots/" + snapshotID,snapshot.snapshot_url_guest);
+        assertEquals(Integer.valueOf(87),snapshot.zoompf_score);
+        assertEquals(Integer.valueOf(3),snapshot.defect_count_critical_1pc);
+    }
+
+    static RigorApiDefectResult defect(int defectID, String severity) {
+        RigorApiDefectResult defect=new RigorApiDefectResult();
+        defect.defect_id=defectID;
+        defect.severity=severity;
+        defect.name="Defect " + defectID;
+        defect.defect_url_guest="https://optimization.example.com/defects/" + defectID;
+        return defect;
+    }
+
+    static void assertDefect(RigorApiDefectResult defect, int defectID, String severity) {
+        assertEquals(Integer.valueOf(defectID),defect.defect_id);
+        assertEquals(severity,defect.severity);
+        assertEquals("Defect " + defectID,defect.name);
+        assertEquals("https://optimization.example.com/defects/" + defectID,defect.defect_url_guest);
+    }
+}
@@ -0,0 +1,247 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jenkinsci.plugins.rigor.optimization.builder.BuilderSettings;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RigorApiHelperTest {
+    @Test
+    public void startsASnapshotPerTest() throws Exception {
+        FakeClient client=new FakeClient();
+        RigorApiHelper helper=helper(client,settings(1,2,3));
+
+        ArrayList<RigorApiSnapshotResult> started=helper.StartBuildTests();
+        assertEquals(3,started.size());
+        for(int i=0;i<3;++i) {
+            assertEquals(Integer.valueOf(i+1),started.get(i).test_id);
+            assertTrue(started.get(i).StartedTimeMS!=null);
+        }
+        assertEquals(Arrays.asList(1,2,3),client.created);
+    }
+
+    @Test
+    public void stoppedBeforeStartingStartsNothing() throws Exception {
+        FakeClient client=new FakeClient();
+        RigorApiHelper helper=helper(client,settings(1,2,3));
+        helper.StopStarting();
+        try {
+            helper.StartBuildTests();
+            fail("expected a stopped start to throw");
+        }
+        catch (Exception e) {
+            assertTrue(e.getMessage().contains("Stopped"));
+        }
+        assertTrue(client.created.isEmpty());
+    }
+
+    @Test
+    public void stoppingPartWayStartsNoMore() throws Exception {
+        final FakeClient client=new FakeClient();
+        final RigorApiHelper helper=helper(client,settings(1,2,3));
+        client.onCreate=new Runnable() {
+            @Override
+            public void run() {
+                helper.StopStarting();
+            }
+        };
+        try {
+            helper.StartBuildTests();
+            fail("expected a stopped start to throw");
+        }
+        catch (Exception e) {
+            assertTrue(e.getMessage().contains("Stopped"));
+        }
+        assertEquals(Arrays.asList(1),client.created);
+    }
+
+    @Test
+    public void collectPassesWhenEverySnapshotPasses() throws Exception {
+        FakeClient client=new FakeClient();
+        WatchingHelper helper=new WatchingHelper(client,scoreSettings(80,1,2));
+        helper.completeLater(snapshot(1,90),snapshot(2,85));
+
+        assertTrue(helper.CollectBuildTests(snapshots(1,2)));
+        assertEquals(2,client.tagged.size());
+        for(String tags: client.tagged) {
+            assertTrue(tags,tags.endsWith("build passed"));
+        }
+    }
+
+    @Test
+    public void collectFailsWhenASnapshotFails() throws Exception {
+        FakeClient client=new FakeClient();
+        WatchingHelper helper=new WatchingHelper(client,scoreSettings(80,1,2));
+        helper.completeLater(snapshot(1,90),snapshot(2,40));
+
+        assertFalse(helper.CollectBuildTests(snapshots(1,2)));
+        assertTrue(client.tagged.toString(),client.tagged.toString().contains("Jenkins project #12 build failed"));
+    }
+
+    @Test
+    public void collectTimesOutAndCancelsTheWatches() throws Exception {
+        FakeClient client=new FakeClient();
+        BuilderSettings settings=scoreSettings(80,1,2);
+        settings.TestTimeoutSecondsParsed=1;
+        WatchingHelper helper=new WatchingHelper(client,settings);
+        helper.completeLater(snapshot(1,90),null);
+
+        assertFalse(helper.CollectBuildTests(snapshots(1,2)));
+        assertTrue(helper.watches.get(1).isCancelled());
+    }
+
+    @Test
+    public void collectReportsAFailedScan() throws Exception {
+        FakeClient client=new FakeClient();
+        BuilderSettings settings=scoreSettings(80,1);
+        WatchingHelper helper=new WatchingHelper(client,settings);
+        helper.watches.add(Futures.<RigorApiSnapshotResult>immediateFailedFuture(new Exception("Test 1, snapshot 101 failed scanning.")));
+        assertFalse(helper.CollectBuildTests(snapshots(1)));
+
+        settings.FailBuildOnSnapshotError=false;
+        helper=new WatchingHelper(client,settings);
+        helper.watches.add(Futures.<RigorApiSnapshotResult>immediateFailedFuture(new Exception("Test 1, snapshot 101 failed scanning.")));
+        assertTrue(helper.CollectBuildTests(snapshots(1)));
+    }
+
+    @Test
+    public void failFastStopsAtTheFirstFailure() throws Exception {
+        FakeClient client=new FakeClient();
+        BuilderSettings settings=scoreSettings(80,1,2);
+        settings.FailFast=true;
+        WatchingHelper helper=new WatchingHelper(client,settings);
+        helper.completeLater(snapshot(1,40),null);
+
+        long startMS=System.currentTimeMillis();
+        assertFalse(helper.CollectBuildTests(snapshots(1,2)));
+        assertTrue(System.currentTimeMillis()-startMS<settings.TestTimeoutSecondsParsed*1000L);
+        assertTrue(helper.watches.get(1).isCancelled());
+    }
+
+    static BuilderSettings scoreSettings(int score, Integer... testIDs) {
+        BuilderSettings settings=settings(testIDs);
+        settings.PerformanceScore=score;
+        return settings;
+    }
+
+    static ArrayList<RigorApiSnapshotResult> snapshots(Integer... testIDs) {
+        ArrayList<RigorApiSnapshotResult> snapshots=new ArrayList<RigorApiSnapshotResult>();
+        for(Integer testID: testIDs) {
+            snapshots.add(snapshot(testID,null));
+        }
+        return snapshots;
+    }
+
+    static RigorApiSnapshotResult snapshot(int testID, Integer score) {
+        RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+        snapshot.test_id=testID;
+        snapshot.snapshot_id=100+testID;
+        snapshot.status=score!=null ? "Complete" : "ScanRunning";
+        snapshot.zoompf_score=score;
+        snapshot.defect_count_critical_1pc=0;
+        return snapshot;
+    }
+
+    // Stands in for the snapshot watcher, completing each watch from another thread
+    static class WatchingHelper extends RigorApiHelper {
+        WatchingHelper(RigorApiClient client, BuilderSettings settings) {
+            super("test-key",settings,new PrintStream(new ByteArrayOutputStream()),12,"project");
+            this.apiClient=client;
+        }
+
+        // Complete the watches with these results shortly, leaving nulls running
+        void completeLater(final RigorApiSnapshotResult... results) {
+            for(final RigorApiSnapshotResult result: results) {
+                final SettableFuture<RigorApiSnapshotResult> watch=SettableFuture.create();
+                this.watches.add(watch);
+                if(result==null) {
+                    continue;
+                }
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(50);
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                        watch.set(result);
+                    }
+                }.start();
+            }
+        }
+
+        @Override
+        public ArrayList<ListenableFuture<RigorApiSnapshotResult>> WatchSnapshots(List<RigorApiSnapshotResult> snapshotsStarted) {
+            assertEquals(snapshotsStarted.size(),this.watches.size());
+            return this.watches;
+        }
+
+        final ArrayList<ListenableFuture<RigorApiSnapshotResult>> watches=new ArrayList<ListenableFuture<RigorApiSnapshotResult>>();
+    }
+
+    static BuilderSettings settings(Integer... testIDs) {
+        BuilderSettings settings=new BuilderSettings();
+        settings.PerformanceTestIDs=new ArrayList<Integer>(Arrays.asList(testIDs));
+        settings.InputFailOnResults=true;
+        settings.DoPolling=true;
+        return settings;
+    }
+
+    static RigorApiHelper helper(RigorApiClient client, BuilderSettings settings) {
+        RigorApiHelper helper=new RigorApiHelper("test-key",settings,new PrintStream(new ByteArrayOutputStream()),12,"project");
+        helper.apiClient=client;
+        return helper;
+    }
+
+    // Creates snapshots numbered after their test, and accepts any tags
+    static class FakeClient extends RigorApiClient {
+        FakeClient() {
+            super("test-key");
+        }
+
+        @Override
+        public ListenableFuture<RigorApiSnapshotResult> StartSnapshotAsync(Integer testID, String tagName) {
+            synchronized (this) {
+                this.created.add(testID);
+            }
+            if(this.onCreate!=null) {
+                this.onCreate.run();
+            }
+            RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+            snapshot.test_id=testID;
+            snapshot.snapshot_id=100+testID;
+            snapshot.status="InQueue";
+            snapshot.StartedTimeMS=System.currentTimeMillis();
+            return Futures.immediateFuture(snapshot);
+        }
+
+        @Override
+        public synchronized ListenableFuture<RigorApiSnapshotResult> UpdateSnapshotsWithTagsAsync(Integer testID, List<Integer> snapshotIDs, ArrayList<RigorApiTag> tags) {
+            this.tagged.add(testID + ":" + RigorApiHelper.tagNames(tags));
+            return Futures.immediateFuture(new RigorApiSnapshotResult());
+        }
+
+        @Override
+        public ListenableFuture<RigorApiSnapshotResult> UpdateTestWithTagsAsync(Integer testID, ArrayList<RigorApiTag> tags) {
+            return Futures.immediateFuture(new RigorApiSnapshotResult());
+        }
+
+        final List<Integer> created=new ArrayList<Integer>();
+        final List<String> tagged=new ArrayList<String>();
+        Runnable onCreate;
+    }
+}
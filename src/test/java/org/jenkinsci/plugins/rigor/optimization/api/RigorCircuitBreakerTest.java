@@ -0,0 +1,215 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RigorCircuitBreakerTest {
+    static final String Endpoint="https://api.example.com/v2/";
+    static final String Key="key";
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        RigorCircuitBreaker breaker=new RigorCircuitBreaker();
+        for(int i=0;i<RigorCircuitBreaker.FailureThreshold-1;++i) {
+            breaker.RecordFailure(Endpoint,Key);
+        }
+        assertEquals(RigorCircuitBreaker.State.CLOSED,breaker.getState(Endpoint,Key));
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+
+        breaker.RecordFailure(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.OPEN,breaker.getState(Endpoint,Key));
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+
+        RigorCircuitBreaker.CircuitStats stats=breaker.getStats().get(0);
+        assertEquals(1,stats.getTimesOpened());
+        assertEquals(2,stats.getRejected());
+        assertTrue(stats.getOpenForMS()>0 && stats.getOpenForMS()<=RigorCircuitBreaker.OpenDurationMS);
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        RigorCircuitBreaker breaker=new RigorCircuitBreaker();
+        for(int i=0;i<RigorCircuitBreaker.FailureThreshold-1;++i) {
+            breaker.RecordFailure(Endpoint,Key);
+        }
+        breaker.RecordSuccess(Endpoint,Key);
+        breaker.RecordFailure(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.CLOSED,breaker.getState(Endpoint,Key));
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        RigorCircuitBreaker breaker=openCircuit();
+        endOpenPeriod(breaker);
+
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+        assertEquals(RigorCircuitBreaker.State.HALF_OPEN,breaker.getState(Endpoint,Key));
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+    }
+
+    @Test
+    public void trialSuccessCloses() {
+        RigorCircuitBreaker breaker=openCircuit();
+        endOpenPeriod(breaker);
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+
+        breaker.RecordSuccess(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.CLOSED,breaker.getState(Endpoint,Key));
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+    }
+
+    @Test
+    public void trialFailureReopens() {
+        RigorCircuitBreaker breaker=openCircuit();
+        endOpenPeriod(breaker);
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+
+        breaker.RecordFailure(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.OPEN,breaker.getState(Endpoint,Key));
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+        assertEquals(2,breaker.getStats().get(0).getTimesOpened());
+    }
+
+    @Test
+    public void abandonedTrialIsReplacedAfterTimeout() {
+        RigorCircuitBreaker breaker=openCircuit();
+        endOpenPeriod(breaker);
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+
+        // The trial never reports back
+        circuit(breaker).trialStarted-=RigorCircuitBreaker.TrialTimeoutMS-1000;
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+        circuit(breaker).trialStarted-=1000;
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+        assertEquals(RigorCircuitBreaker.State.HALF_OPEN,breaker.getState(Endpoint,Key));
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+    }
+
+    @Test
+    public void inconclusiveTrialFreesTheSlot() {
+        RigorCircuitBreaker breaker=openCircuit();
+        endOpenPeriod(breaker);
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+
+        breaker.RecordInconclusive(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.HALF_OPEN,breaker.getState(Endpoint,Key));
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+    }
+
+    @Test
+    public void inconclusiveDoesNotCountEitherWay() {
+        RigorCircuitBreaker breaker=new RigorCircuitBreaker();
+        for(int i=0;i<RigorCircuitBreaker.FailureThreshold-1;++i) {
+            breaker.RecordFailure(Endpoint,Key);
+            breaker.RecordInconclusive(Endpoint,Key);
+        }
+        assertEquals(RigorCircuitBreaker.FailureThreshold-1,breaker.getStats().get(0).getConsecutiveFailures());
+        breaker.RecordFailure(Endpoint,Key);
+        assertEquals(RigorCircuitBreaker.State.OPEN,breaker.getState(Endpoint,Key));
+    }
+
+    @Test
+    public void failuresWhileOpenDontExtendIt() {
+        RigorCircuitBreaker breaker=openCircuit();
+        long openUntil=circuit(breaker).openUntil;
+
+        // Requests sent before it opened failing afterwards
+        breaker.RecordFailure(Endpoint,Key);
+        breaker.RecordFailure(Endpoint,Key);
+        assertEquals(openUntil,circuit(breaker).openUntil);
+        assertEquals(1,breaker.getStats().get(0).getTimesOpened());
+
+        // Once the open period is up the trial goes ahead as usual
+        endOpenPeriod(breaker);
+        assertTrue(breaker.AllowRequest(Endpoint,Key));
+    }
+
+    @Test
+    public void cancelledTrialThroughTheClientFreesTheSlot() throws Exception {
+        String endpoint="http://breaker-trial.invalid/v2/";
+        HangingClient client=new HangingClient();
+        RigorCircuitBreaker breaker=RigorCircuitBreaker.Get();
+        RigorApiClient.SetApiEndpoint(endpoint);
+        try {
+            for(int i=0;i<RigorCircuitBreaker.FailureThreshold;++i) {
+                breaker.RecordFailure(endpoint,client.getKeyFingerprint());
+            }
+            breaker.getCircuit(endpoint,client.getKeyFingerprint()).openUntil=System.currentTimeMillis()-1;
+
+            // The first request through is the trial, and never hears back
+            ListenableFuture<RigorApiSnapshotResult> trial=client.UpdateTestWithTagsAsync(1,new ArrayList<RigorApiTag>());
+            assertEquals(RigorCircuitBreaker.State.HALF_OPEN,breaker.getState(endpoint,client.getKeyFingerprint()));
+            assertTrue(breaker.getCircuit(endpoint,client.getKeyFingerprint()).trialStarted!=0);
+
+            // Giving up on it lets the next request be the trial straight away
+            trial.cancel(true);
+            long until=System.currentTimeMillis()+5000;
+            while(breaker.getCircuit(endpoint,client.getKeyFingerprint()).trialStarted!=0 && System.currentTimeMillis()<until) {
+                Thread.sleep(10);
+            }
+            assertTrue(breaker.AllowRequest(endpoint,client.getKeyFingerprint()));
+        }
+        finally {
+            RigorApiClient.SetApiEndpoint(null);
+        }
+    }
+
+    @Test
+    public void circuitsArePerEndpointAndKey() {
+        RigorCircuitBreaker breaker=openCircuit();
+        assertFalse(breaker.AllowRequest(Endpoint,Key));
+        assertTrue(breaker.AllowRequest(Endpoint,"other"));
+        assertTrue(breaker.AllowRequest("https://other.example.com/v2/",Key));
+    }
+
+    // Sends nothing, each exchange hangs until it's cancelled
+    static class HangingClient extends RigorApiClient {
+        HangingClient() {
+            super("breaker-test-key");
+        }
+
+        @Override
+        protected Future<HttpResponse> sendRequest(HttpRequestBase request, final RigorApiResponse response, Class<?> resultClass,
+                                                   final SettableFuture<RigorApiResponse> future) {
+            SettableFuture<HttpResponse> exchange=SettableFuture.create();
+            exchange.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    response.TransportError=new CancellationException("Request cancelled");
+                    future.set(response);
+                }
+            }, RigorApiHttpTransport.Get().getWorkerExecutor());
+            return exchange;
+        }
+    }
+
+    static RigorCircuitBreaker openCircuit() {
+        RigorCircuitBreaker breaker=new RigorCircuitBreaker();
+        for(int i=0;i<RigorCircuitBreaker.FailureThreshold;++i) {
+            breaker.RecordFailure(Endpoint,Key);
+        }
+        assertEquals(RigorCircuitBreaker.State.OPEN,breaker.getState(Endpoint,Key));
+        return breaker;
+    }
+
+    static void endOpenPeriod(RigorCircuitBreaker breaker) {
+        circuit(breaker).openUntil=System.currentTimeMillis()-1;
+    }
+
+    static RigorCircuitBreaker.Circuit circuit(RigorCircuitBreaker breaker) {
+        return breaker.getCircuit(Endpoint,Key);
+    }
+}
@@ -0,0 +1,141 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RigorDefectPagerTest {
+    @Test
+    public void stopsOnAShortPage() throws Exception {
+        PagedClient client=new PagedClient(RigorDefectPager.PageSize,RigorDefectPager.PageSize,30);
+        RigorDefectPager pager=new RigorDefectPager(client,1,2,"f.severity=Critical");
+
+        int count=0;
+        for(RigorApiDefectResult defect=pager.Next(); defect!=null; defect=pager.Next()) {
+            assertEquals(Integer.valueOf(count),defect.defect_id);
+            ++count;
+        }
+        assertEquals(2*RigorDefectPager.PageSize+30,count);
+        assertEquals(Arrays.asList(1,2,3),client.pagesRequested);
+        assertEquals("f.severity=Critical",client.filter);
+
+        // Stays finished
+        assertNull(pager.Next());
+        assertEquals(3,client.pagesRequested.size());
+    }
+
+    @Test
+    public void stopsOnAnEmptyPage() throws Exception {
+        PagedClient client=new PagedClient(RigorDefectPager.PageSize,0);
+        RigorDefectPager pager=new RigorDefectPager(client,1,2,null);
+
+        int count=0;
+        while(pager.Next()!=null) {
+            ++count;
+        }
+        assertEquals(RigorDefectPager.PageSize,count);
+        assertEquals(Arrays.asList(1,2),client.pagesRequested);
+    }
+
+    @Test
+    public void emptyListing() throws Exception {
+        PagedClient client=new PagedClient(0);
+        assertNull(new RigorDefectPager(client,1,2,null).Next());
+        assertEquals(Arrays.asList(1),client.pagesRequested);
+    }
+
+    @Test
+    public void missingDefectsListIsTreatedAsEmpty() throws Exception {
+        PagedClient client=new PagedClient();
+        client.pages.put(1,Futures.immediateFuture(new RigorApiDefectResultList()));
+        assertNull(new RigorDefectPager(client,1,2,null).Next());
+    }
+
+    @Test
+    public void nextPageIsFetchedWhileTheCurrentOneIsRead() throws Exception {
+        PagedClient client=new PagedClient(RigorDefectPager.PageSize,5);
+        RigorDefectPager pager=new RigorDefectPager(client,1,2,null);
+        assertEquals(Arrays.asList(1),client.pagesRequested);
+
+        pager.Next();
+        assertEquals(Arrays.asList(1,2),client.pagesRequested);
+    }
+
+    @Test
+    public void closeCancelsThePrefetch() throws Exception {
+        PagedClient client=new PagedClient(RigorDefectPager.PageSize);
+        SettableFuture<RigorApiDefectResultList> second=SettableFuture.create();
+        client.pages.put(2,second);
+
+        RigorDefectPager pager=new RigorDefectPager(client,1,2,null);
+        pager.Next();
+        pager.Close();
+        assertTrue(second.isCancelled());
+        assertNull(pager.Next());
+    }
+
+    @Test
+    public void pageErrorsAreThrown() throws Exception {
+        PagedClient client=new PagedClient(RigorDefectPager.PageSize);
+        client.pages.put(2,Futures.<RigorApiDefectResultList>immediateFailedFuture(new RigorApiException("Server returned 500",true)));
+
+        RigorDefectPager pager=new RigorDefectPager(client,1,2,null);
+        for(int i=0;i<RigorDefectPager.PageSize;++i) {
+            pager.Next();
+        }
+        try {
+            pager.Next();
+            fail("expected the page error");
+        }
+        catch (RigorApiException e) {
+            assertEquals("Server returned 500",e.getMessage());
+        }
+    }
+
+    // Serves the given page sizes, defect IDs numbered across pages
+    static class PagedClient extends RigorApiClient {
+        PagedClient(int... pageSizes) {
+            super("test-key");
+            int id=0;
+            for(int page=0;page<pageSizes.length;++page) {
+                RigorApiDefectResultList list=new RigorApiDefectResultList();
+                list.defects=new ArrayList<RigorApiDefectResult>();
+                for(int i=0;i<pageSizes[page];++i) {
+                    RigorApiDefectResult defect=new RigorApiDefectResult();
+                    defect.defect_id=id++;
+                    list.defects.add(defect);
+                }
+                this.pages.put(page+1,Futures.immediateFuture(list));
+            }
+        }
+
+        @Override
+        public ListenableFuture<RigorApiDefectResultList> GetDefectsPageAsync(Integer testID, Integer snapshotID,
+                                                                              String filter, int page, int perPage) {
+            assertEquals(RigorDefectPager.PageSize,perPage);
+            this.filter=filter;
+            this.pagesRequested.add(page);
+            ListenableFuture<RigorApiDefectResultList> result=this.pages.get(page);
+            if(result==null) {
+                fail("page " + page + " should not have been requested");
+            }
+            return result;
+        }
+
+        final Map<Integer,ListenableFuture<RigorApiDefectResultList>> pages=new HashMap<Integer,ListenableFuture<RigorApiDefectResultList>>();
+        final List<Integer> pagesRequested=new ArrayList<Integer>();
+        String filter;
+    }
+}
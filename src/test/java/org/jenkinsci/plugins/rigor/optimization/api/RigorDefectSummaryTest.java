@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RigorDefectSummaryTest {
+    @Test
+    public void severitiesAreCountedWhateverTheirCase() {
+        RigorDefectSummary summary=summary(Collections.<Integer>emptyList(),
+                defect(1,"Critical"),defect(2,"critical"),defect(3,"High"),defect(4,null),defect(5,"CRITICAL"));
+
+        assertEquals(3,summary.CountBySeverity("Critical"));
+        assertEquals(3,summary.CountBySeverity(RigorDefectSummary.CriticalSeverity.toLowerCase()));
+        assertEquals(1,summary.CountBySeverity("high"));
+        assertEquals(0,summary.CountBySeverity("Low"));
+        assertEquals(0,summary.CountBySeverity(null));
+
+        Map<String,Integer> counts=summary.SeverityCounts();
+        assertEquals(Arrays.asList("Critical","High","Unknown"),new ArrayList<String>(counts.keySet()));
+        assertEquals(Integer.valueOf(3),counts.get("Critical"));
+        assertEquals(Integer.valueOf(1),counts.get("Unknown"));
+    }
+
+    @Test
+    public void keepsDetailsOfCriticalAndInterestingDefects() {
+        RigorDefectSummary summary=summary(Arrays.asList(3,9),
+                defect(1,"Critical"),defect(2,"Low"),defect(3,"High"),defect(4,"critical"));
+
+        assertEquals(2,summary.CriticalDefects().size());
+        assertEquals(Integer.valueOf(1),summary.CriticalDefects().get(0).defect_id);
+        assertEquals(Integer.valueOf(4),summary.CriticalDefects().get(1).defect_id);
+
+        assertEquals(1,summary.Matching(Arrays.asList(3,9)).size());
+        assertEquals(Integer.valueOf(3),summary.Matching(Arrays.asList(3,9)).get(0).defect_id);
+    }
+
+    @Test
+    public void containsEveryListedDefect() {
+        RigorDefectSummary summary=summary(Collections.<Integer>emptyList(),defect(2,"Low"),defect(70000,"Medium"));
+        assertTrue(summary.Contains(2));
+        assertTrue(summary.Contains(70000));
+        assertFalse(summary.Contains(3));
+        assertFalse(summary.Contains(null));
+        assertFalse(summary.Contains(-1));
+    }
+
+    static RigorDefectSummary summary(List<Integer> interestingIDs, RigorApiDefectResult... defects) {
+        RigorDefectSummary summary=new RigorDefectSummary(interestingIDs);
+        for(RigorApiDefectResult defect: defects) {
+            summary.Add(defect);
+        }
+        return summary;
+    }
+
+    static RigorApiDefectResult defect(int defectID, String severity) {
+        RigorApiDefectResult defect=new RigorApiDefectResult();
+        defect.defect_id=defectID;
+        defect.severity=severity;
+        return defect;
+    }
+}
@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RigorRateLimiterTest {
+    @Test
+    public void burstGoesStraightThrough() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(10,5);
+        for(int i=0;i<5;++i) {
+            assertEquals(0,limiter.Reserve("key"));
+        }
+    }
+
+    @Test
+    public void requestsPastTheBurstAreSpacedAtTheRate() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(10,2);   // one every 100ms
+
+        // The burst, then the first one over it takes the next slot without waiting
+        assertEquals(0,limiter.Reserve("key"));
+        assertEquals(0,limiter.Reserve("key"));
+        assertEquals(0,limiter.Reserve("key"));
+
+        // Everyone after queues a slot apart
+        assertBetween(50,100,limiter.Reserve("key"));
+        assertBetween(150,200,limiter.Reserve("key"));
+        assertBetween(250,300,limiter.Reserve("key"));
+
+        RigorRateLimiter.KeyStats stats=limiter.getStats().get(0);
+        assertEquals(6,stats.getRequests());
+        assertEquals(3,stats.getDelayedRequests());
+        assertBetween(250,300,stats.getMaxWaitMS());
+        assertBetween(300,400,stats.getBacklogMS());
+    }
+
+    @Test
+    public void permitsRefillWithTimeUpToTheBurst() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(10,3);
+        for(int i=0;i<3;++i) {
+            limiter.Reserve("key");
+        }
+        assertEquals(0.0,limiter.buckets.get("key").storedPermits,0.01);
+
+        // 200ms idle earns two permits
+        elapse(limiter,"key",200);
+        limiter.Reserve("key");
+        assertEquals(1.0,limiter.buckets.get("key").storedPermits,0.01);
+
+        // A long idle spell can't bank more than the burst
+        elapse(limiter,"key",60000);
+        limiter.Reserve("key");
+        assertEquals(2.0,limiter.buckets.get("key").storedPermits,0.01);
+    }
+
+    @Test
+    public void keysHaveTheirOwnBuckets() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(1,1);
+        assertEquals(0,limiter.Reserve("a"));
+        assertEquals(0,limiter.Reserve("a"));
+        assertTrue(limiter.Reserve("a")>0);
+        assertEquals(0,limiter.Reserve("b"));
+    }
+
+    @Test
+    public void zeroRateTurnsLimitingOff() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(0,1);
+        for(int i=0;i<100;++i) {
+            assertEquals(0,limiter.Reserve("key"));
+        }
+    }
+
+    @Test
+    public void reconfiguringTrimsStoredPermits() {
+        RigorRateLimiter limiter=new RigorRateLimiter();
+        limiter.Configure(10,20);
+        limiter.Reserve("key");
+        limiter.Configure(10,4);
+        assertEquals(4.0,limiter.buckets.get("key").storedPermits,0.01);
+        assertEquals(4,limiter.getBurstSize());
+
+        // Burst can't go below one
+        limiter.Configure(10,0);
+        assertEquals(1,limiter.getBurstSize());
+    }
+
+    // Pretend the bucket was last drawn on ms earlier than it was
+    static void elapse(RigorRateLimiter limiter, String key, long ms) {
+        limiter.buckets.get(key).nextFreeNanos-=ms*1000000L;
+    }
+
+    static void assertBetween(long low, long high, long actual) {
+        assertTrue(actual + " not in [" + low + ", " + high + "]",actual>=low && actual<=high);
+    }
+}
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RigorRetryPolicyTest {
+    @Test
+    public void successIsNeverRetried() {
+        assertFalse(RigorRetryPolicy.ShouldRetry(true,status(200),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,status(200),0));
+    }
+
+    @Test
+    public void idempotentRetriesServerErrorsAndThrottling() {
+        for(int code: new int[] {429, 500, 502, 503, 504}) {
+            assertTrue("status " + code,RigorRetryPolicy.ShouldRetry(true,status(code),0));
+        }
+        for(int code: new int[] {400, 401, 403, 404, 409}) {
+            assertFalse("status " + code,RigorRetryPolicy.ShouldRetry(true,status(code),0));
+        }
+    }
+
+    @Test
+    public void postOnlyRetriedWhenServerDidNotAct() {
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,status(429),0));
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,status(503),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,status(500),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,status(502),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,status(504),0));
+    }
+
+    @Test
+    public void transportErrors() {
+        // Any network trouble for idempotent requests
+        assertTrue(RigorRetryPolicy.ShouldRetry(true,transport(new SocketTimeoutException("read timed out")),0));
+        assertTrue(RigorRetryPolicy.ShouldRetry(true,transport(new IOException("connection reset")),0));
+        assertTrue(RigorRetryPolicy.ShouldRetry(true,transport(new TimeoutException("pool")),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(true,transport(new IllegalStateException("bug")),0));
+
+        // Only failures before the request went out for POSTs
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,transport(new ConnectException("refused")),0));
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,transport(new ConnectTimeoutException("connect timed out")),0));
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,transport(new TimeoutException("pool")),0));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,transport(new SocketTimeoutException("read timed out")),0));
+    }
+
+    @Test
+    public void retryBudget() {
+        assertTrue(RigorRetryPolicy.ShouldRetry(true,status(503),RigorRetryPolicy.MaxIdempotentRetries-1));
+        assertFalse(RigorRetryPolicy.ShouldRetry(true,status(503),RigorRetryPolicy.MaxIdempotentRetries));
+        assertTrue(RigorRetryPolicy.ShouldRetry(false,status(503),RigorRetryPolicy.MaxPostRetries-1));
+        assertFalse(RigorRetryPolicy.ShouldRetry(false,status(503),RigorRetryPolicy.MaxPostRetries));
+    }
+
+    @Test
+    public void isIdempotent() {
+        assertTrue(RigorRetryPolicy.IsIdempotent("GET"));
+        assertTrue(RigorRetryPolicy.IsIdempotent("PUT"));
+        assertFalse(RigorRetryPolicy.IsIdempotent("POST"));
+        assertFalse(RigorRetryPolicy.IsIdempotent("post"));
+    }
+
+    @Test
+    public void delayHonoursRetryAfter() {
+        assertEquals(2000,RigorRetryPolicy.DelayMS(retryAfter(429,2000L),0));
+        assertEquals(2000,RigorRetryPolicy.DelayMS(retryAfter(503,2000L),3));
+        assertEquals(0,RigorRetryPolicy.DelayMS(retryAfter(429,-5L),0));
+    }
+
+    @Test
+    public void delayCapsRetryAfter() {
+        assertEquals(RigorRetryPolicy.MaxRetryAfterMS,RigorRetryPolicy.DelayMS(retryAfter(429,RigorRetryPolicy.MaxRetryAfterMS+1L),0));
+        assertEquals(RigorRetryPolicy.MaxRetryAfterMS,RigorRetryPolicy.DelayMS(retryAfter(503,3600000L),0));
+    }
+
+    @Test
+    public void delayIgnoresRetryAfterOnOtherStatuses() {
+        for(int i=0;i<100;++i) {
+            assertTrue(RigorRetryPolicy.DelayMS(retryAfter(500,50000L),0)<=RigorRetryPolicy.BaseDelayMS);
+        }
+    }
+
+    @Test
+    public void backoffIsJitteredWithinDoublingCap() {
+        for(int retries=0;retries<8;++retries) {
+            long cap=Math.min(RigorRetryPolicy.MaxDelayMS,(long)RigorRetryPolicy.BaseDelayMS<<retries);
+            for(int i=0;i<200;++i) {
+                long delay=RigorRetryPolicy.DelayMS(status(503),retries);
+                assertTrue("retry " + retries + " delay " + delay,delay>=0 && delay<=cap);
+            }
+        }
+    }
+
+    @Test
+    public void backoffNeverExceedsMax() {
+        for(int retries: new int[] {10, 31, 64, 1000}) {
+            for(int i=0;i<200;++i) {
+                long delay=RigorRetryPolicy.DelayMS(transport(new IOException("reset")),retries);
+                assertTrue("retry " + retries + " delay " + delay,delay>=0 && delay<=RigorRetryPolicy.MaxDelayMS);
+            }
+        }
+    }
+
+    static RigorApiResponse status(int code) {
+        RigorApiResponse response=new RigorApiResponse();
+        response.HttpStatusCode=code;
+        return response;
+    }
+
+    static RigorApiResponse retryAfter(int code, Long retryAfterMS) {
+        RigorApiResponse response=status(code);
+        response.RetryAfterMS=retryAfterMS;
+        return response;
+    }
+
+    static RigorApiResponse transport(Exception e) {
+        RigorApiResponse response=new RigorApiResponse();
+        response.TransportError=e;
+        return response;
+    }
+}
@@ -0,0 +1,159 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RigorSnapshotPollerTest {
+    @Test
+    public void groupsByTestInPageSizedChunks() {
+        ArrayList<RigorApiSnapshotResult> outstanding=new ArrayList<RigorApiSnapshotResult>();
+        for(int i=0;i<RigorSnapshotPoller.MaxSnapshotsPerListRequest+1;++i) {
+            outstanding.add(snapshot(1,i,"ScanRunning"));
+        }
+        outstanding.add(snapshot(2,1000,"ScanRunning"));
+
+        Map<Integer,List<List<Integer>>> byTest=RigorSnapshotPoller.GroupByTest(outstanding);
+        assertEquals(Arrays.asList(1,2),new ArrayList<Integer>(byTest.keySet()));
+        assertEquals(2,byTest.get(1).size());
+        assertEquals(RigorSnapshotPoller.MaxSnapshotsPerListRequest,byTest.get(1).get(0).size());
+        assertEquals(Arrays.asList(RigorSnapshotPoller.MaxSnapshotsPerListRequest),byTest.get(1).get(1));
+        assertEquals(Arrays.asList(Arrays.asList(1000)),byTest.get(2));
+    }
+
+    @Test
+    public void oneSnapshotIsFetchedDirectly() throws Exception {
+        FakeClient client=new FakeClient();
+        client.snapshots.put(11,snapshot(1,11,"Complete"));
+
+        Map<Integer,RigorApiSnapshotResult> found=poll(client,1,11);
+        assertEquals("Complete",found.get(11).status);
+        assertEquals(0,client.listRequests);
+        assertEquals(Arrays.asList(11),client.individualRequests);
+    }
+
+    @Test
+    public void severalSnapshotsShareOneListRequest() throws Exception {
+        FakeClient client=new FakeClient();
+        client.listed.add(snapshot(1,11,"Complete"));
+        client.listed.add(snapshot(1,12,"ScanRunning"));
+
+        Map<Integer,RigorApiSnapshotResult> found=poll(client,1,11,12);
+        assertEquals(2,found.size());
+        assertEquals("Complete",found.get(11).status);
+        assertEquals("ScanRunning",found.get(12).status);
+        assertEquals(1,client.listRequests);
+        assertTrue(client.individualRequests.isEmpty());
+    }
+
+    @Test
+    public void snapshotsMissingFromTheListAreFetchedDirectly() throws Exception {
+        FakeClient client=new FakeClient();
+        client.listed.add(snapshot(1,11,"Complete"));
+        client.listed.add(snapshot(1,99,"Complete"));   // not asked for
+        client.snapshots.put(12,snapshot(1,12,"InQueue"));
+
+        Map<Integer,RigorApiSnapshotResult> found=poll(client,1,11,12);
+        assertEquals(2,found.size());
+        assertEquals("InQueue",found.get(12).status);
+        assertEquals(Arrays.asList(12),client.individualRequests);
+    }
+
+    @Test
+    public void failedListFallsBackToDirectFetches() throws Exception {
+        FakeClient client=new FakeClient();
+        client.listFails=true;
+        client.snapshots.put(11,snapshot(1,11,"Complete"));
+        client.snapshots.put(12,snapshot(1,12,"Complete"));
+
+        Map<Integer,RigorApiSnapshotResult> found=poll(client,1,11,12);
+        assertEquals(2,found.size());
+        assertEquals(Arrays.asList(11,12),client.individualRequests);
+    }
+
+    @Test
+    public void directFetchErrorsFailThePoll() throws Exception {
+        FakeClient client=new FakeClient();
+        client.snapshots.put(11,snapshot(1,11,"Complete"));
+        try {
+            poll(client,1,11,12);
+            fail("expected the missing snapshot to fail the poll");
+        }
+        catch (ExecutionException e) {
+            assertEquals("snapshot 12 not found",e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void listRequestsAreLimitedToOnePage() throws Exception {
+        ArrayList<Integer> ids=new ArrayList<Integer>();
+        for(int i=0;i<=RigorApiClient.MaxPageSize;++i) {
+            ids.add(i);
+        }
+        try {
+            new RigorApiClient("test-key").GetSnapshotsAsync(1,ids).get();
+            fail("expected more than a page of ids to be refused");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    static Map<Integer,RigorApiSnapshotResult> poll(RigorApiClient client, Integer testID, Integer... snapshotIDs) throws Exception {
+        return new RigorSnapshotPoller(client).PollTest(testID,Arrays.asList(snapshotIDs)).get(10,TimeUnit.SECONDS);
+    }
+
+    static RigorApiSnapshotResult snapshot(int testID, int snapshotID, String status) {
+        RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+        snapshot.test_id=testID;
+        snapshot.snapshot_id=snapshotID;
+        snapshot.status=status;
+        return snapshot;
+    }
+
+    // Answers list requests from listed, and single lookups from snapshots
+    static class FakeClient extends RigorApiClient {
+        FakeClient() {
+            super("test-key");
+        }
+
+        @Override
+        public synchronized ListenableFuture<RigorApiSnapshotResultList> GetSnapshotsAsync(Integer testID, List<Integer> snapshotIDs) {
+            ++this.listRequests;
+            if(this.listFails) {
+                return Futures.immediateFailedFuture(new RigorApiException("Server returned 404",false));
+            }
+            RigorApiSnapshotResultList list=new RigorApiSnapshotResultList();
+            list.snapshots=new ArrayList<RigorApiSnapshotResult>(this.listed);
+            return Futures.immediateFuture(list);
+        }
+
+        @Override
+        public synchronized ListenableFuture<RigorApiSnapshotResult> GetSnapshotAsync(Integer testID, Integer snapshotID) {
+            this.individualRequests.add(snapshotID);
+            RigorApiSnapshotResult snapshot=this.snapshots.get(snapshotID);
+            if(snapshot==null) {
+                return Futures.immediateFailedFuture(new RigorApiException("snapshot " + snapshotID + " not found",false));
+            }
+            return Futures.immediateFuture(snapshot);
+        }
+
+        final List<RigorApiSnapshotResult> listed=new ArrayList<RigorApiSnapshotResult>();
+        final Map<Integer,RigorApiSnapshotResult> snapshots=new HashMap<Integer,RigorApiSnapshotResult>();
+        final List<Integer> individualRequests=new ArrayList<Integer>();
+        int listRequests;
+        boolean listFails;
+    }
+}
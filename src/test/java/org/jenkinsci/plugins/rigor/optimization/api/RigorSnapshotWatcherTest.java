@@ -0,0 +1,230 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RigorSnapshotWatcherTest {
+    // Long enough for a few scheduler ticks
+    static final long WaitSeconds=10;
+
+    @Test
+    public void completesWhenTheScanFinishes() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"InQueue","ScanRunning","Complete");
+        RecordingStrategy strategy=new RecordingStrategy();
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(strategy);
+        try {
+            RigorApiSnapshotResult result=watcher.Watch(client,started(1,11,0)).get(WaitSeconds,TimeUnit.SECONDS);
+            assertEquals("Complete",result.status);
+            assertEquals(3,client.polls(11));
+            assertEquals(1,strategy.completions.size());
+            assertEquals(0,watcher.getWatchedCount());
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void failedScanFailsTheWait() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"BadScan");
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(new RecordingStrategy());
+        try {
+            watcher.Watch(client,started(1,11,0)).get(WaitSeconds,TimeUnit.SECONDS);
+            fail("expected the failed scan to fail the wait");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("failed scanning"));
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void buildsWatchingTheSameSnapshotShareItsPolls() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"ScanRunning","Complete");
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(new RecordingStrategy());
+        try {
+            ListenableFuture<RigorApiSnapshotResult> first=watcher.Watch(client,started(1,11,0));
+            ListenableFuture<RigorApiSnapshotResult> second=watcher.Watch(client,started(1,11,0));
+            assertEquals(1,watcher.getWatchedCount());
+            assertEquals(2,watcher.getWaiterCount());
+
+            assertEquals("Complete",first.get(WaitSeconds,TimeUnit.SECONDS).status);
+            assertEquals("Complete",second.get(WaitSeconds,TimeUnit.SECONDS).status);
+            assertEquals(2,client.polls(11));
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cancellingTheLastWaitStopsWatching() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"ScanRunning");
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(new RecordingStrategy());
+        try {
+            ListenableFuture<RigorApiSnapshotResult> first=watcher.Watch(client,started(1,11,0));
+            ListenableFuture<RigorApiSnapshotResult> second=watcher.Watch(client,started(1,11,0));
+
+            first.cancel(false);
+            waitFor(watcher,1);
+            assertEquals(1,watcher.getWatchedCount());
+
+            second.cancel(false);
+            waitFor(watcher,0);
+            assertEquals(0,watcher.getWatchedCount());
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void snapshotsWeStartedAreTimedFromTheirStart() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"Complete");
+        RecordingStrategy strategy=new RecordingStrategy();
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(strategy);
+        try {
+            watcher.Watch(client,started(1,11,20000)).get(WaitSeconds,TimeUnit.SECONDS);
+            assertEquals(1,strategy.completions.size());
+            assertTrue("scan time " + strategy.completions.get(0),strategy.completions.get(0)>=10000);
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void lateWatchFoundCompleteIsNotTimed() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"Complete");
+        client.statuses(12,"Complete");
+        RecordingStrategy strategy=new RecordingStrategy();
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(strategy);
+        try {
+            // Started long ago, or started elsewhere and we don't know when
+            watcher.Watch(client,started(1,11,RigorSnapshotWatcher.LateWatchMS+600000)).get(WaitSeconds,TimeUnit.SECONDS);
+            RigorApiSnapshotResult unknown=started(1,12,0);
+            unknown.StartedTimeMS=null;
+            watcher.Watch(client,unknown).get(WaitSeconds,TimeUnit.SECONDS);
+            assertTrue(strategy.completions.isEmpty());
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void lateWatchSeenRunningIsTimedFromItsStart() throws Exception {
+        StatusClient client=new StatusClient();
+        client.statuses(11,"ScanRunning","Complete");
+        RecordingStrategy strategy=new RecordingStrategy();
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(strategy);
+        try {
+            watcher.Watch(client,started(1,11,RigorSnapshotWatcher.LateWatchMS+600000)).get(WaitSeconds,TimeUnit.SECONDS);
+            assertEquals(1,strategy.completions.size());
+            assertTrue("scan time " + strategy.completions.get(0),strategy.completions.get(0)>=RigorSnapshotWatcher.LateWatchMS+600000);
+        }
+        finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void closeStopsTheScheduler() {
+        RigorSnapshotWatcher watcher=new RigorSnapshotWatcher(new RecordingStrategy());
+        watcher.close();
+        assertTrue(watcher.scheduler.isShutdown());
+    }
+
+    // A snapshot we started agoMS ago
+    static RigorApiSnapshotResult started(int testID, int snapshotID, long agoMS) {
+        RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+        snapshot.test_id=testID;
+        snapshot.snapshot_id=snapshotID;
+        snapshot.status="InQueue";
+        snapshot.StartedTimeMS=System.currentTimeMillis()-agoMS;
+        return snapshot;
+    }
+
+    static void waitFor(RigorSnapshotWatcher watcher, int waiters) throws InterruptedException {
+        long until=System.currentTimeMillis()+WaitSeconds*1000;
+        while(watcher.getWaiterCount()!=waiters && System.currentTimeMillis()<until) {
+            Thread.sleep(50);
+        }
+        assertEquals(waiters,watcher.getWaiterCount());
+    }
+
+    // Poll again on every tick, noting the completions
+    static class RecordingStrategy implements RigorPollStrategy {
+        @Override
+        public long FirstPollDelayMS(List<RigorApiSnapshotResult> started) {
+            return 0;
+        }
+
+        @Override
+        public long NextPollDelayMS(List<RigorApiSnapshotResult> outstanding, long elapsedMS, int pollCount) {
+            return 0;
+        }
+
+        @Override
+        public synchronized void RecordCompletion(Integer testID, long durationMS) {
+            this.completions.add(durationMS);
+        }
+
+        final List<Long> completions=new ArrayList<Long>();
+    }
+
+    // Answers each snapshot lookup with the next of its statuses, repeating the last
+    static class StatusClient extends RigorApiClient {
+        StatusClient() {
+            super("test-key");
+        }
+
+        synchronized void statuses(Integer snapshotID, String... statuses) {
+            LinkedList<String> queue=new LinkedList<String>();
+            for(String status: statuses) {
+                queue.add(status);
+            }
+            this.statuses.put(snapshotID,queue);
+        }
+
+        synchronized int polls(Integer snapshotID) {
+            Integer count=this.polls.get(snapshotID);
+            return count!=null ? count : 0;
+        }
+
+        @Override
+        public synchronized ListenableFuture<RigorApiSnapshotResult> GetSnapshotAsync(Integer testID, Integer snapshotID) {
+            this.polls.put(snapshotID,polls(snapshotID)+1);
+            LinkedList<String> queue=this.statuses.get(snapshotID);
+            RigorApiSnapshotResult snapshot=new RigorApiSnapshotResult();
+            snapshot.test_id=testID;
+            snapshot.snapshot_id=snapshotID;
+            snapshot.status=queue.size()>1 ? queue.removeFirst() : queue.getFirst();
+            return Futures.immediateFuture(snapshot);
+        }
+
+        final Map<Integer,LinkedList<String>> statuses=new HashMap<Integer,LinkedList<String>>();
+        final Map<Integer,Integer> polls=new HashMap<Integer,Integer>();
+    }
+}
@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.rigor.optimization.api;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RigorTestCacheTest {
+    @Test
+    public void fewUnknownIDsAreCheckedOneByOne() throws Exception {
+        TestsClient client=new TestsClient(2);
+        client.tests.addAll(Arrays.asList(1,2));
+
+        Map<Integer,RigorApiTestResult> found=new RigorTestCache().FindTests(client,Arrays.asList(1,2));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1,2)),found.keySet());
+        assertTrue(client.pagesListed.isEmpty());
+        assertEquals(new HashSet<Integer>(Arrays.asList(1,2)),client.checked);
+    }
+
+    @Test
+    public void manyUnknownIDsAreListed() throws Exception {
+        TestsClient client=new TestsClient(RigorTestCache.ListPageSize);
+        for(int id=1;id<=150;++id) {
+            client.tests.add(id);
+        }
+
+        Map<Integer,RigorApiTestResult> found=new RigorTestCache().FindTests(client,Arrays.asList(5,120,149));
+        assertEquals(3,found.size());
+        assertEquals(Arrays.asList(1,2),client.pagesListed);
+        assertTrue(client.checked.isEmpty());
+    }
+
+    @Test
+    public void shortPagesDontEndTheListing() throws Exception {
+        // The API hands back fewer than asked for on every page
+        TestsClient client=new TestsClient(10);
+        for(int id=1;id<=25;++id) {
+            client.tests.add(id);
+        }
+
+        Map<Integer,RigorApiTestResult> found=new RigorTestCache().FindTests(client,Arrays.asList(3,15,25));
+        assertEquals(3,found.size());
+        assertEquals(Arrays.asList(1,2,3),client.pagesListed);
+        assertTrue(client.checked.isEmpty());
+    }
+
+    @Test
+    public void idsTheListingMissesAreCheckedDirectly() throws Exception {
+        TestsClient client=new TestsClient(RigorTestCache.ListPageSize);
+        client.tests.addAll(Arrays.asList(1,2,3));
+        client.unlisted.add(4);     // created while we were paging, say
+
+        Map<Integer,RigorApiTestResult> found=new RigorTestCache().FindTests(client,Arrays.asList(1,2,4,5));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1,2,4)),found.keySet());
+        assertEquals(Arrays.asList(1,2),client.pagesListed);
+        assertEquals(new HashSet<Integer>(Arrays.asList(4,5)),client.checked);
+    }
+
+    @Test
+    public void lookupsAreCachedFoundOrMissing() throws Exception {
+        TestsClient client=new TestsClient(RigorTestCache.ListPageSize);
+        client.tests.add(1);
+        RigorTestCache cache=new RigorTestCache();
+
+        cache.FindTests(client,Arrays.asList(1,2));
+        assertEquals(2,cache.getSize());
+        client.checked.clear();
+
+        Map<Integer,RigorApiTestResult> found=cache.FindTests(client,Arrays.asList(1,2));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1)),found.keySet());
+        assertTrue(client.checked.isEmpty());
+    }
+
+    @Test
+    public void errorsOtherThanNotFoundArentCached() throws Exception {
+        TestsClient client=new TestsClient(RigorTestCache.ListPageSize);
+        client.failing.add(7);
+        RigorTestCache cache=new RigorTestCache();
+
+        assertTrue(cache.FindTests(client,Arrays.asList(7)).isEmpty());
+        assertEquals(0,cache.getSize());
+    }
+
+    // Lists tests pageSize at a time whatever page size is asked for, and answers single lookups
+    static class TestsClient extends RigorApiClient {
+        TestsClient(int pageSize) {
+            super("test-key");
+            this.pageSize=pageSize;
+        }
+
+        @Override
+        public synchronized RigorApiTestResultList GetTests(int page, int perPage) throws Exception {
+            assertEquals(RigorTestCache.ListPageSize,perPage);
+            this.pagesListed.add(page);
+            RigorApiTestResultList list=new RigorApiTestResultList();
+            list.tests=new ArrayList<RigorApiTestResult>();
+            for(int i=(page-1)*this.pageSize;i<Math.min(page*this.pageSize,this.tests.size());++i) {
+                list.tests.add(test(this.tests.get(i)));
+            }
+            return list;
+        }
+
+        @Override
+        public synchronized ListenableFuture<RigorApiResponse> TestForValidTestIDAsync(Integer testID) {
+            this.checked.add(testID);
+            RigorApiResponse response=new RigorApiResponse();
+            if(this.failing.contains(testID)) {
+                response.HttpStatusCode=500;
+            }
+            else if(this.tests.contains(testID) || this.unlisted.contains(testID)) {
+                response.HttpStatusCode=200;
+                response.Result=test(testID);
+            }
+            else {
+                response.HttpStatusCode=404;
+            }
+            return Futures.immediateFuture(response);
+        }
+
+        static RigorApiTestResult test(Integer testID) {
+            RigorApiTestResult test=new RigorApiTestResult();
+            test.test_id=testID;
+            test.name="Test " + testID;
+            return test;
+        }
+
+        final int pageSize;
+        final List<Integer> tests=new ArrayList<Integer>();
+        final Set<Integer> unlisted=new HashSet<Integer>();
+        final Set<Integer> failing=new HashSet<Integer>();
+        final List<Integer> pagesListed=new ArrayList<Integer>();
+        final Set<Integer> checked=new HashSet<Integer>();
+    }
+}